@@ -0,0 +1,120 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Runs on a device so the migrations meet the framework's own SQLite build
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+    private static final String NAME = "migration-test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(NAME);
+    }
+
+    // The schema as the first release created it
+    private void createV1Database() {
+        File file = context.getDatabasePath(NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL("CREATE TABLE locations (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "name TEXT, " +
+                    "latitude REAL, " +
+                    "longitude REAL, " +
+                    "radius_meters REAL)");
+            db.execSQL("INSERT INTO locations (name, latitude, longitude, radius_meters)"
+                    + " VALUES ('Home', 52.3702, 4.8952, 100)");
+            db.execSQL("INSERT INTO locations (name, latitude, longitude, radius_meters)"
+                    + " VALUES ('Office', 48.8566, 2.3522, 250)");
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void upgradesV1DatabaseAndBackfillsBoxes() {
+        createV1Database();
+
+        DatabaseHelper helper = new DatabaseHelper(context, NAME);
+        try {
+            assertEquals(3, helper.getReadableDatabase().getVersion());
+            assertEquals(2, helper.getLocationCount());
+
+            List<LocationItem> home = helper.getLocationsInBounds(52.37, 52.371, 4.895, 4.896);
+            assertEquals(1, home.size());
+            assertEquals("Home", home.get(0).name);
+            assertNull(home.get(0).polygon);
+            // 250 m is about 0.0022 degrees of latitude, so a box just north of Office still touches it
+            assertEquals(1, helper.getLocationsInBounds(48.858, 48.859, 2.352, 2.353).size());
+            assertTrue(helper.getLocationsInBounds(48.86, 48.87, 2.352, 2.353).isEmpty());
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void upgradedDatabaseTakesNewRows() {
+        createV1Database();
+
+        DatabaseHelper helper = new DatabaseHelper(context, NAME);
+        try {
+            LocationItem park = LocationItem.fromPolygon(0, "Park",
+                    new double[] { 52.0, 4.0, 52.0, 4.01, 52.01, 4.01, 52.01, 4.0 });
+            long id = helper.insertLocation(park.name, park.latitude, park.longitude, park.radiusMeters,
+                    park.polygon);
+            assertTrue(id > 0);
+
+            List<LocationItem> found = helper.getLocationsInBounds(52.005, 52.006, 4.005, 4.006);
+            assertEquals(1, found.size());
+            assertNotNull(found.get(0).polygon);
+            assertEquals(8, found.get(0).polygon.length);
+
+            assertTrue(helper.deleteLocation((int) id));
+            assertTrue(helper.getLocationsInBounds(52.005, 52.006, 4.005, 4.006).isEmpty());
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void freshInstallCreatesCurrentSchema() {
+        DatabaseHelper helper = new DatabaseHelper(context, NAME);
+        try {
+            assertEquals(3, helper.getReadableDatabase().getVersion());
+            assertEquals(0, helper.getLocationCount());
+            long id = helper.insertLocation("Home", 52.3702, 4.8952, 100);
+            assertEquals(1, helper.getLocationsInBounds(52.37, 52.371, 4.895, 4.896).size());
+            assertTrue(helper.deleteLocation((int) id));
+        } finally {
+            helper.close();
+        }
+    }
+}
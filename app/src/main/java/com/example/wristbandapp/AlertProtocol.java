@@ -0,0 +1,149 @@
+package com.example.wristbandapp;
+
+// Binary command protocol spoken over the Nordic UART characteristics.
+//
+// Every packet (a single characteristic write or notification) is:
+//   [VERSION] [frame] [frame] ...
+// and every frame is:
+//   [opcode u8] [seq u8] [length u8] [payload: length bytes]
+//
+// The phone writes command frames to RX; the wristband answers each frame with an OP_ACK frame
+// (payload: one status byte) on the TX notify characteristic, carrying the same sequence number.
+// Multi-byte payload fields are little-endian. Must stay in sync with esp32_wristband.ino.
+public final class AlertProtocol {
+    // Deliberately outside ASCII so it can't be confused with the legacy "ON"/"OFF" strings
+    public static final int VERSION = 0xA1;
+    public static final int HEADER_SIZE = 3;
+
+    public static final int OP_ALERT_ON = 0x01;
+    public static final int OP_ALERT_OFF = 0x02;
+    public static final int OP_PING = 0x03;
+    public static final int OP_ACK = 0x80;
+
+    public static final int ACK_OK = 0;
+    public static final int ACK_BAD_FRAME = 1;
+    public static final int ACK_UNKNOWN_OPCODE = 2;
+
+    public static final int PATTERN_CONTINUOUS = 0;
+    public static final int PATTERN_PULSE = 1;
+    public static final int PATTERN_RAMP = 2;
+
+    private AlertProtocol() {
+    }
+
+    public static final class Command {
+        public final int opcode;
+        public final byte[] payload;
+
+        private Command(int opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+
+        // durationSec = 0 keeps the alert running until an OFF arrives
+        public static Command alertOn(int pattern, int intensity, int durationSec) {
+            return new Command(OP_ALERT_ON, new byte[] {
+                    (byte) pattern,
+                    (byte) intensity,
+                    (byte) durationSec,
+                    (byte) (durationSec >> 8) });
+        }
+
+        public static Command alertOff() {
+            return new Command(OP_ALERT_OFF, new byte[0]);
+        }
+
+        public static Command ping() {
+            return new Command(OP_PING, new byte[0]);
+        }
+
+        public int encodedSize() {
+            return HEADER_SIZE + payload.length;
+        }
+    }
+
+    public interface FrameHandler {
+        void onFrame(int opcode, int seq, byte[] packet, int payloadOffset, int payloadLength);
+    }
+
+    public interface AckHandler {
+        void onAck(int seq, int status);
+    }
+
+    public static int packetSize(Command[] commands, int count) {
+        int size = 1;
+        for (int i = 0; i < count; i++) {
+            size += commands[i].encodedSize();
+        }
+        return size;
+    }
+
+    // Encodes commands[0..count) with the matching sequence numbers into out and returns the number
+    // of bytes written. out must hold at least packetSize(commands, count) bytes.
+    public static int encode(Command[] commands, int[] seqs, int count, byte[] out) {
+        int pos = 0;
+        out[pos++] = (byte) VERSION;
+        for (int i = 0; i < count; i++) {
+            Command command = commands[i];
+            out[pos++] = (byte) command.opcode;
+            out[pos++] = (byte) seqs[i];
+            out[pos++] = (byte) command.payload.length;
+            System.arraycopy(command.payload, 0, out, pos, command.payload.length);
+            pos += command.payload.length;
+        }
+        return pos;
+    }
+
+    public static int encodeAck(int seq, int status, byte[] out, int offset) {
+        out[offset] = (byte) OP_ACK;
+        out[offset + 1] = (byte) seq;
+        out[offset + 2] = 1;
+        out[offset + 3] = (byte) status;
+        return HEADER_SIZE + 1;
+    }
+
+    // Walks the frames of a packet. Returns false (having delivered any complete frames before the
+    // problem) if the version byte is wrong or a frame runs past the end of the packet.
+    public static boolean decode(byte[] packet, int length, FrameHandler handler) {
+        if (length < 1 || (packet[0] & 0xFF) != VERSION) {
+            return false;
+        }
+        int pos = 1;
+        while (pos < length) {
+            if (pos + HEADER_SIZE > length) {
+                return false;
+            }
+            int opcode = packet[pos] & 0xFF;
+            int seq = packet[pos + 1] & 0xFF;
+            int payloadLength = packet[pos + 2] & 0xFF;
+            int payloadOffset = pos + HEADER_SIZE;
+            if (payloadOffset + payloadLength > length) {
+                return false;
+            }
+            handler.onFrame(opcode, seq, packet, payloadOffset, payloadLength);
+            pos = payloadOffset + payloadLength;
+        }
+        return true;
+    }
+
+    public static boolean decodeAcks(byte[] packet, AckHandler handler) {
+        return decode(packet, packet.length, (opcode, seq, buf, offset, length) -> {
+            if (opcode == OP_ACK && length >= 1) {
+                handler.onAck(seq, buf[offset] & 0xFF);
+            }
+        });
+    }
+
+    public static boolean isLegacyEncodable(Command command) {
+        return command.opcode == OP_ALERT_ON || command.opcode == OP_ALERT_OFF;
+    }
+
+    // Pre-protocol firmware only understands the bare "ON"/"OFF" strings. Anything else has no
+    // legacy form; check isLegacyEncodable first.
+    public static byte[] encodeLegacy(Command command) {
+        if (!isLegacyEncodable(command)) {
+            throw new IllegalArgumentException("No legacy encoding for opcode " + command.opcode);
+        }
+        return command.opcode == OP_ALERT_ON ? "ON".getBytes() : "OFF".getBytes();
+    }
+}
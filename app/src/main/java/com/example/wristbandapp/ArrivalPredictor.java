@@ -0,0 +1,95 @@
+package com.example.wristbandapp;
+
+// Velocity from the recent filtered fixes: a least-squares line through the last few positions,
+// which is steadier than the difference of the last two when each fix is off by its accuracy
+// (with only two fixes it is that difference).
+// Positions are projected onto a plane tangent at the newest fix, with one cos() per fit.
+public class ArrivalPredictor {
+    private static final int HISTORY = 8;
+    // Older fixes say little about where the user is heading now. Has to cover two fixes at the
+    // scheduler's slowest interval, or a fast user far from every fence would never get a speed.
+    private static final long MAX_AGE_MS = 300000;
+    private static final int MIN_FIXES = 2;
+    // Shorter spans are dominated by position noise
+    private static final long MIN_SPAN_MS = 4000;
+
+    private final long[] times = new long[HISTORY];
+    private final double[] lats = new double[HISTORY];
+    private final double[] lngs = new double[HISTORY];
+    private int next;
+    private int count;
+
+    private boolean hasVelocity;
+    private double velocityEast;
+    private double velocityNorth;
+
+    // Fixes must arrive in time order; an older one is ignored
+    public void add(long timeMs, double lat, double lng) {
+        if (count > 0 && timeMs <= times[(next + HISTORY - 1) % HISTORY]) {
+            return;
+        }
+        times[next] = timeMs;
+        lats[next] = lat;
+        lngs[next] = lng;
+        next = (next + 1) % HISTORY;
+        count = Math.min(count + 1, HISTORY);
+        fit();
+    }
+
+    // Meters per second, 0 when unknown
+    public double getVelocityEast() {
+        return hasVelocity ? velocityEast : 0;
+    }
+
+    public double getVelocityNorth() {
+        return hasVelocity ? velocityNorth : 0;
+    }
+
+    public float getSpeed() {
+        return hasVelocity ? (float) Math.sqrt(velocityEast * velocityEast + velocityNorth * velocityNorth) : 0f;
+    }
+
+    private void fit() {
+        int newest = (next + HISTORY - 1) % HISTORY;
+        long newestTime = times[newest];
+        double cosLat = Math.cos(Math.toRadians(lats[newest]));
+
+        double sumT = 0;
+        double sumX = 0;
+        double sumY = 0;
+        int n = 0;
+        long oldestTime = newestTime;
+        for (int i = 0; i < count; i++) {
+            int k = (newest + HISTORY - i) % HISTORY;
+            if (newestTime - times[k] > MAX_AGE_MS) {
+                break;
+            }
+            sumT += (times[k] - newestTime) / 1000.0;
+            sumX += (lngs[k] - lngs[newest]) * FenceTable.METERS_PER_DEGREE * cosLat;
+            sumY += (lats[k] - lats[newest]) * FenceTable.METERS_PER_DEGREE;
+            oldestTime = times[k];
+            n++;
+        }
+        if (n < MIN_FIXES || newestTime - oldestTime < MIN_SPAN_MS) {
+            hasVelocity = false;
+            return;
+        }
+
+        double meanT = sumT / n;
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double stt = 0;
+        double stx = 0;
+        double sty = 0;
+        for (int i = 0; i < n; i++) {
+            int k = (newest + HISTORY - i) % HISTORY;
+            double t = (times[k] - newestTime) / 1000.0 - meanT;
+            stt += t * t;
+            stx += t * ((lngs[k] - lngs[newest]) * FenceTable.METERS_PER_DEGREE * cosLat - meanX);
+            sty += t * ((lats[k] - lats[newest]) * FenceTable.METERS_PER_DEGREE - meanY);
+        }
+        velocityEast = stx / stt;
+        velocityNorth = sty / stt;
+        hasVelocity = true;
+    }
+}
@@ -6,36 +6,107 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.PrintWriter;
+import java.util.List;
 import java.util.UUID;
 
 public class BleManager {
     private static final String TAG = "BleManager";
+    private static final TraceLog.Event LOG_NO_SCANNER = new TraceLog.Event(Log.ERROR, TAG,
+            "BluetoothLeScanner is null. Are permissions granted?");
+    private static final TraceLog.Event LOG_FOUND = new TraceLog.Event(Log.INFO, TAG, "Found device: %s Name: %s");
+    private static final TraceLog.Event LOG_AUTO_CONNECT = new TraceLog.Event(Log.INFO, TAG,
+            "Fast reconnect attempts exhausted, waiting in background for the wristband");
+    private static final TraceLog.Event LOG_RECONNECT = new TraceLog.Event(Log.INFO, TAG,
+            "Reconnect attempt %d in %dms");
+    private static final TraceLog.Event LOG_NOT_PAIRED = new TraceLog.Event(Log.ERROR, TAG,
+            "Cannot send opcode %d: no wristband paired");
+    private static final TraceLog.Event LOG_BINARY = new TraceLog.Event(Log.INFO, TAG,
+            "Wristband speaks AlertProtocol v1");
+    private static final TraceLog.Event LOG_LEGACY = new TraceLog.Event(Log.INFO, TAG,
+            "Wristband uses legacy ON/OFF strings");
+    private static final TraceLog.Event LOG_NO_CHARACTERISTIC = new TraceLog.Event(Log.ERROR, TAG,
+            "ERROR: Found Service, but Characteristic %s is missing!");
+    private static final TraceLog.Event LOG_NO_SERVICE = new TraceLog.Event(Log.ERROR, TAG,
+            "ERROR: Service %s not found on device!");
+    private static final TraceLog.Event LOG_AVAILABLE_SERVICE = new TraceLog.Event(Log.ERROR, TAG,
+            "Available Service UUID: %s");
+    private static final TraceLog.Event LOG_CONNECTED = new TraceLog.Event(Log.INFO, TAG, "Connected to GATT server.");
+    private static final TraceLog.Event LOG_DISCONNECTED = new TraceLog.Event(Log.INFO, TAG,
+            "Disconnected from GATT server (status %d).");
+    private static final TraceLog.Event LOG_DISCOVERED = new TraceLog.Event(Log.INFO, TAG, "Services discovered.");
+    private static final TraceLog.Event LOG_BAD_ACK = new TraceLog.Event(Log.ERROR, TAG,
+            "Malformed ack packet from wristband");
+    private static final TraceLog.Event LOG_WRITE_FAILED = new TraceLog.Event(Log.ERROR, TAG,
+            "Write to %s failed with status %d");
+    private static final TraceLog.Event LOG_FIRST_WRITE = new TraceLog.Event(Log.INFO, TAG,
+            "Connect-to-first-write latency: %dms");
     // Standard Nordic UART Service
     private static final UUID SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
     private static final UUID RX_CHAR_UUID = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E");
+    private static final UUID TX_CHAR_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    // Default ATT MTU of 23 minus the 3-byte write header
+    private static final int MAX_PACKET_BYTES = 20;
 
     private Context context;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGatt bluetoothGatt;
-    private boolean isConnected = false;
+    private volatile BluetoothGatt bluetoothGatt;
+    // Read from callers' threads by isConnected()
+    private volatile boolean isConnected = false;
+    // Resolved once per connection in onServicesDiscovered
+    private volatile BluetoothGattCharacteristic rxCharacteristic;
+    private volatile boolean binaryProtocol = false;
+
+    public enum AlertMode {
+        // Default connection priority, acknowledged writes
+        BALANCED,
+        // High connection priority and write-without-response where the wristband supports it
+        LOW_LATENCY
+    }
+
+    private AlertMode alertMode;
+
+    private long connectStartedAtMs;
+    private boolean awaitingFirstWrite = false;
+    private volatile long connectToFirstWriteMs = -1;
+    // When the write in flight was handed to the stack, for the completion latency
+    private volatile long writeStartedNanos;
+
+    private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy(new java.util.Random());
+    private int reconnectAttempts = 0;
+    // Set by disconnect() so a deliberate teardown doesn't trigger the reconnect loop
+    private volatile boolean userDisconnected = false;
+    private final Runnable reconnectRunnable = this::reconnect;
 
     public interface BleCallback {
         void onConnectionStateChange(boolean connected);
     }
 
     private BleCallback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final GattCommandQueue commandQueue;
+    private final ScanScheduler scanScheduler;
+    private final EventJournal journal;
 
     public BleManager(Context context, BleCallback callback) {
         this.context = context;
         this.callback = callback;
+        this.commandQueue = new GattCommandQueue(mainHandler, this::writeBatch);
+        this.scanScheduler = new ScanScheduler(mainHandler, scanListener);
+        this.journal = EventJournal.getInstance(context);
+        this.alertMode = readAlertMode(context.getSharedPreferences("WristbandPrefs", Context.MODE_PRIVATE));
         BluetoothManager bm = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
         if (bm != null) {
             bluetoothAdapter = bm.getAdapter();
@@ -63,41 +134,10 @@ public class BleManager {
 
         android.bluetooth.le.BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
         if (scanner == null) {
-            Log.e(TAG, "BluetoothLeScanner is null. Are permissions granted?");
+            TraceLog.log(LOG_NO_SCANNER);
             return;
         }
 
-        android.bluetooth.le.ScanCallback scanCallback = new android.bluetooth.le.ScanCallback() {
-            @Override
-            public void onScanResult(int callbackType, android.bluetooth.le.ScanResult result) {
-                BluetoothDevice device = result.getDevice();
-
-                // Sometimes the name comes back null on Android despite Advertising correctly.
-                // We check by Name OR by scanning for the UUID. The filter handles the UUID
-                // part.
-                if (device != null) {
-                    Log.i(TAG, "Found device: " + device.getAddress() + " Name: " + device.getName());
-                    scanner.stopScan(this);
-
-                    android.content.SharedPreferences prefs = context.getSharedPreferences("WristbandPrefs",
-                            Context.MODE_PRIVATE);
-                    prefs.edit().putString("ESP32_MAC", device.getAddress()).apply();
-
-                    connectToDevice(device.getAddress());
-                }
-            }
-
-            @Override
-            public void onScanFailed(int errorCode) {
-                Log.e(TAG, "BLE Scan Failed with code: " + errorCode);
-            }
-        };
-
-        // Aggressive Scan Settings
-        android.bluetooth.le.ScanSettings settings = new android.bluetooth.le.ScanSettings.Builder()
-                .setScanMode(android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_LATENCY)
-                .build();
-
         // Filter exclusively for our Service UUID so we don't pick up random
         // TVs/laptops
         java.util.List<android.bluetooth.le.ScanFilter> filters = new java.util.ArrayList<>();
@@ -105,38 +145,141 @@ public class BleManager {
                 .setServiceUuid(new android.os.ParcelUuid(SERVICE_UUID))
                 .build());
 
-        scanner.startScan(filters, settings, scanCallback);
-        Log.i(TAG, "Started aggressive BLE scan for Service UUID...");
+        mainHandler.post(() -> scanScheduler.start(scanner, filters));
+    }
 
-        // Stop scan after 30 seconds (longer discovery window)
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            try {
-                scanner.stopScan(scanCallback);
-                Log.i(TAG, "Stopped BLE scan after timeout.");
-            } catch (Exception ignored) {
-            }
-        }, 30000);
+    private final ScanScheduler.Listener scanListener = new ScanScheduler.Listener() {
+        @SuppressLint("MissingPermission")
+        @Override
+        public void onDeviceFound(BluetoothDevice device) {
+            // Sometimes the name comes back null on Android despite Advertising correctly.
+            // The filter matches on the UUID, so any result is our wristband.
+            TraceLog.log(LOG_FOUND, device.getAddress(), device.getName());
+
+            android.content.SharedPreferences prefs = context.getSharedPreferences("WristbandPrefs",
+                    Context.MODE_PRIVATE);
+            prefs.edit().putString("ESP32_MAC", device.getAddress()).apply();
+
+            connectToDevice(device.getAddress());
+        }
+    };
+
+    public void connectToDevice(String deviceAddress) {
+        userDisconnected = false;
+        mainHandler.post(() -> {
+            mainHandler.removeCallbacks(reconnectRunnable);
+            reconnectAttempts = 0;
+            connect(deviceAddress, false);
+        });
     }
 
     @SuppressLint("MissingPermission")
-    public void connectToDevice(String deviceAddress) {
+    private void connect(String deviceAddress, boolean autoConnect) {
         if (bluetoothAdapter == null || deviceAddress == null)
             return;
         BluetoothDevice device = bluetoothAdapter.getRemoteDevice(deviceAddress);
         if (device == null)
             return;
 
-        bluetoothGatt = device.connectGatt(context, false, gattCallback);
+        // Every connectGatt() registers a new client; release the previous one first
+        closeGatt();
+        connectStartedAtMs = SystemClock.elapsedRealtime();
+        awaitingFirstWrite = true;
+        bluetoothGatt = device.connectGatt(context, autoConnect, gattCallback);
+    }
+
+    private void scheduleReconnect() {
+        if (userDisconnected) {
+            return;
+        }
+        reconnectAttempts++;
+        if (reconnectPolicy.useAutoConnect(reconnectAttempts)) {
+            TraceLog.log(LOG_AUTO_CONNECT);
+            reconnect();
+        } else {
+            long delay = reconnectPolicy.delayMs(reconnectAttempts);
+            TraceLog.log(LOG_RECONNECT, reconnectAttempts, delay);
+            mainHandler.removeCallbacks(reconnectRunnable);
+            mainHandler.postDelayed(reconnectRunnable, delay);
+        }
+    }
+
+    private void reconnect() {
+        if (userDisconnected || isConnected) {
+            return;
+        }
+        String savedMac = context.getSharedPreferences("WristbandPrefs", Context.MODE_PRIVATE)
+                .getString("ESP32_MAC", null);
+        Metrics.RECONNECTS.increment();
+        connect(savedMac, reconnectPolicy.useAutoConnect(reconnectAttempts));
     }
 
+    // close() unregisters the callback, so no disconnect event follows; reset the link state here
+    // or the queue would keep writing to the released client
     @SuppressLint("MissingPermission")
-    public void disconnect() {
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+    private void closeGatt() {
+        BluetoothGatt gatt = bluetoothGatt;
+        bluetoothGatt = null;
+        if (gatt != null) {
+            gatt.disconnect();
+            gatt.close();
         }
         isConnected = false;
+        rxCharacteristic = null;
+        mainHandler.post(() -> commandQueue.setReady(false));
+    }
+
+    // The mode is chosen in MainActivity's menu and stored as its name
+    public static AlertMode readAlertMode(SharedPreferences prefs) {
+        try {
+            return AlertMode.valueOf(prefs.getString("ALERT_MODE", AlertMode.BALANCED.name()));
+        } catch (IllegalArgumentException e) {
+            return AlertMode.BALANCED;
+        }
+    }
+
+    // Main thread only. Takes effect on the current connection straight away.
+    public void setAlertMode(AlertMode mode) {
+        alertMode = mode;
+        BluetoothGatt gatt = bluetoothGatt;
+        if (gatt != null && isConnected) {
+            applyAlertMode(gatt, rxCharacteristic);
+        }
+    }
+
+    // Link latencies for the diagnostics dialog, in the same shape as Metrics.dump. Main thread only.
+    public void dump(PrintWriter pw) {
+        pw.println("alert_mode: " + alertMode);
+        // Time from connectToDevice() to the first write the stack confirmed
+        pw.println("connect_to_first_write (ms): " + (connectToFirstWriteMs >= 0 ? connectToFirstWriteMs : "none"));
+        // Round trip of the last acknowledged command; legacy firmware never acks
+        long roundTripMs = commandQueue.getLastRoundTripMs();
+        pw.println("last_ack_round_trip (ms): " + (roundTripMs >= 0 ? roundTripMs : "none"));
+        pw.flush();
+    }
+
+    @SuppressLint("MissingPermission")
+    private void applyAlertMode(BluetoothGatt gatt, BluetoothGattCharacteristic charac) {
+        boolean lowLatency = alertMode == AlertMode.LOW_LATENCY;
+        gatt.requestConnectionPriority(lowLatency
+                ? BluetoothGatt.CONNECTION_PRIORITY_HIGH
+                : BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+        if (charac != null) {
+            boolean canSkipResponse = (charac.getProperties()
+                    & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+            charac.setWriteType(lowLatency && canSkipResponse
+                    ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                    : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    public void disconnect() {
+        userDisconnected = true;
+        mainHandler.removeCallbacks(reconnectRunnable);
+        mainHandler.post(scanScheduler::stop);
+        mainHandler.post(commandQueue::clear);
+        closeGatt();
         if (callback != null) {
             new Handler(Looper.getMainLooper()).post(() -> callback.onConnectionStateChange(false));
         }
@@ -146,65 +289,137 @@ public class BleManager {
         return isConnected;
     }
 
-    @SuppressLint("MissingPermission")
     public void sendAlert() {
-        if (bluetoothGatt == null || !isConnected) {
-            Log.e(TAG, "Cannot send alert: Not connected (gatt=" + bluetoothGatt + ")");
+        sendLedState(AlertProtocol.Command.alertOn(AlertProtocol.PATTERN_PULSE, 255, 0));
+    }
+
+    public void sendOffAlert() {
+        sendLedState(AlertProtocol.Command.alertOff());
+    }
+
+    // Only the latest LED state matters, so queued ON/OFF commands coalesce
+    private void sendLedState(AlertProtocol.Command command) {
+        if (bluetoothGatt == null) {
+            TraceLog.log(LOG_NOT_PAIRED, command.opcode);
             return;
         }
+        mainHandler.post(() -> commandQueue.enqueue("LED", command));
+    }
 
-        BluetoothGattService service = bluetoothGatt.getService(SERVICE_UUID);
-        if (service != null) {
-            BluetoothGattCharacteristic charac = service.getCharacteristic(RX_CHAR_UUID);
-            if (charac != null) {
-                charac.setValue("ON".getBytes());
-                bluetoothGatt.writeCharacteristic(charac);
-                Log.d(TAG, "SUCCESS! Alert payload 'ON' sent to ESP32");
-            } else {
-                Log.e(TAG, "ERROR: Found Service, but Characteristic " + RX_CHAR_UUID + " is missing!");
+    @SuppressLint("MissingPermission")
+    private boolean writeBatch(List<GattCommandQueue.Command> batch) {
+        BluetoothGatt gatt = bluetoothGatt;
+        BluetoothGattCharacteristic charac = rxCharacteristic;
+        if (gatt == null || !isConnected || charac == null) {
+            return false;
+        }
+
+        byte[] payload;
+        if (binaryProtocol) {
+            int count = batch.size();
+            AlertProtocol.Command[] commands = new AlertProtocol.Command[count];
+            int[] seqs = new int[count];
+            for (int i = 0; i < count; i++) {
+                commands[i] = batch.get(i).body;
+                seqs[i] = batch.get(i).seq;
             }
+            payload = new byte[AlertProtocol.packetSize(commands, count)];
+            AlertProtocol.encode(commands, seqs, count, payload);
         } else {
-            Log.e(TAG, "ERROR: Service " + SERVICE_UUID + " not found on device!");
-
-            // Debug: print what services DO exist
-            for (BluetoothGattService s : bluetoothGatt.getServices()) {
-                Log.e(TAG, "Available Service UUID: " + s.getUuid().toString());
+            payload = AlertProtocol.encodeLegacy(batch.get(0).body);
+        }
+        charac.setValue(payload);
+        writeStartedNanos = SystemClock.elapsedRealtimeNanos();
+        boolean accepted = gatt.writeCharacteristic(charac);
+        Metrics.GATT_WRITES.increment();
+        if (accepted) {
+            long fixNanos = Metrics.takeAlertFix();
+            if (fixNanos != 0) {
+                Metrics.FIX_TO_WRITE.record((writeStartedNanos - fixNanos) / 1000000);
             }
+        } else {
+            Metrics.GATT_WRITE_FAILURES.increment();
         }
+        GattCommandQueue.Command first = batch.get(0);
+        journal.recordGattWrite(first.body.opcode, first.seq, batch.size(), accepted);
+        return accepted;
     }
 
+    // Firmware that exposes the TX characteristic speaks AlertProtocol and acks over notifications
     @SuppressLint("MissingPermission")
-    public void sendOffAlert() {
-        if (bluetoothGatt == null || !isConnected) {
-            Log.e(TAG, "Cannot send OFF alert: Not connected");
-            return;
+    private boolean enableAckNotifications(BluetoothGatt gatt) {
+        BluetoothGattService service = gatt.getService(SERVICE_UUID);
+        BluetoothGattCharacteristic tx = service != null ? service.getCharacteristic(TX_CHAR_UUID) : null;
+        if (tx == null) {
+            return false;
         }
+        BluetoothGattDescriptor cccd = tx.getDescriptor(CCCD_UUID);
+        if (cccd == null || !gatt.setCharacteristicNotification(tx, true)) {
+            return false;
+        }
+        cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        return gatt.writeDescriptor(cccd);
+    }
+
+    private void onProtocolResolved(boolean binary) {
+        binaryProtocol = binary;
+        TraceLog.log(binary ? LOG_BINARY : LOG_LEGACY);
+        mainHandler.post(() -> {
+            commandQueue.setProtocol(binary, MAX_PACKET_BYTES);
+            commandQueue.setReady(true);
+        });
+    }
 
-        BluetoothGattService service = bluetoothGatt.getService(SERVICE_UUID);
+    private BluetoothGattCharacteristic resolveRxCharacteristic(BluetoothGatt gatt) {
+        BluetoothGattService service = gatt.getService(SERVICE_UUID);
         if (service != null) {
             BluetoothGattCharacteristic charac = service.getCharacteristic(RX_CHAR_UUID);
-            if (charac != null) {
-                charac.setValue("OFF".getBytes());
-                bluetoothGatt.writeCharacteristic(charac);
-                Log.d(TAG, "SUCCESS! Alert payload 'OFF' sent to ESP32");
+            if (charac == null) {
+                TraceLog.log(LOG_NO_CHARACTERISTIC, RX_CHAR_UUID);
             }
+            return charac;
+        }
+        TraceLog.log(LOG_NO_SERVICE, SERVICE_UUID);
+
+        // Debug: print what services DO exist
+        for (BluetoothGattService s : gatt.getServices()) {
+            TraceLog.log(LOG_AVAILABLE_SERVICE, s.getUuid());
         }
+        return null;
     }
 
     private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @SuppressLint("MissingPermission")
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (gatt != bluetoothGatt) {
+                // Late event from a client we already replaced or released
+                gatt.close();
+                return;
+            }
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 isConnected = true;
-                Log.i(TAG, "Connected to GATT server.");
+                mainHandler.post(() -> {
+                    mainHandler.removeCallbacks(reconnectRunnable);
+                    reconnectAttempts = 0;
+                });
+                TraceLog.log(LOG_CONNECTED);
                 gatt.discoverServices();
                 if (callback != null) {
                     new Handler(Looper.getMainLooper()).post(() -> callback.onConnectionStateChange(true));
                 }
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                Metrics.DISCONNECTS.increment();
                 isConnected = false;
-                Log.i(TAG, "Disconnected from GATT server.");
+                rxCharacteristic = null;
+                mainHandler.post(() -> {
+                    commandQueue.setReady(false);
+                    // An autoConnect client keeps waiting for the device by itself
+                    if (!reconnectPolicy.useAutoConnect(reconnectAttempts)) {
+                        scheduleReconnect();
+                    }
+                });
+                TraceLog.log(LOG_DISCONNECTED, status);
                 if (callback != null) {
                     new Handler(Looper.getMainLooper()).post(() -> callback.onConnectionStateChange(false));
                 }
@@ -214,7 +429,59 @@ public class BleManager {
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.i(TAG, "Services discovered.");
+                TraceLog.log(LOG_DISCOVERED);
+                BluetoothGattCharacteristic charac = resolveRxCharacteristic(gatt);
+                rxCharacteristic = charac;
+                applyAlertMode(gatt, charac);
+                if (charac != null && !enableAckNotifications(gatt)) {
+                    onProtocolResolved(false);
+                }
+            }
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            if (CCCD_UUID.equals(descriptor.getUuid())
+                    && TX_CHAR_UUID.equals(descriptor.getCharacteristic().getUuid())) {
+                onProtocolResolved(status == BluetoothGatt.GATT_SUCCESS);
+            }
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            if (TX_CHAR_UUID.equals(characteristic.getUuid())) {
+                byte[] value = characteristic.getValue();
+                if (value == null || !AlertProtocol.decodeAcks(value,
+                        (seq, status) -> {
+                            journal.recordAck(seq, status);
+                            mainHandler.post(() -> commandQueue.onAck(seq, status));
+                        })) {
+                    TraceLog.log(LOG_BAD_ACK);
+                }
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic,
+                int status) {
+            if (RX_CHAR_UUID.equals(characteristic.getUuid())) {
+                boolean success = status == BluetoothGatt.GATT_SUCCESS;
+                Metrics.WRITE_COMPLETION.record((SystemClock.elapsedRealtimeNanos() - writeStartedNanos) / 1000000);
+                if (!success) {
+                    Metrics.GATT_WRITE_FAILURES.increment();
+                }
+                journal.recordGattResult(status);
+                if (!success) {
+                    TraceLog.log(LOG_WRITE_FAILED, RX_CHAR_UUID, status);
+                }
+                mainHandler.post(() -> {
+                    if (success && awaitingFirstWrite) {
+                        awaitingFirstWrite = false;
+                        connectToFirstWriteMs = SystemClock.elapsedRealtime() - connectStartedAtMs;
+                        TraceLog.log(LOG_FIRST_WRITE, connectToFirstWriteMs);
+                    }
+                    commandQueue.onWriteComplete(success);
+                });
             }
         }
     };
@@ -1,25 +1,88 @@
 package com.example.wristbandapp;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
+// Storage only. All writes should go through LocationRepository, which runs them off the main
+// thread and tells everyone else what changed.
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "locations.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 3;
     private static final String TABLE_LOCATIONS = "locations";
+    // Each fence's bounding box, keyed by locations.id. A plain indexed table rather than an R*Tree,
+    // which framework SQLite isn't guaranteed to include.
+    private static final String TABLE_LOCATIONS_BBOX = "locations_bbox";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    private interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    // MIGRATIONS[i] upgrades a database from version i + 1 to i + 2. Never edit a shipped step;
+    // append a new one and bump DATABASE_VERSION instead.
+    private static final Migration[] MIGRATIONS = {
+            DatabaseHelper::migrateToV2,
+            DatabaseHelper::migrateToV3,
+    };
+
+    public interface LocationVisitor {
+        void visit(LocationItem item) throws IOException;
+    }
+
+    public interface NameVisitor {
+        void visit(int id, String name);
+    }
+
+    private static final String[] LOCATION_COLUMNS = {
+            "id", "name", "latitude", "longitude", "radius_meters", "polygon" };
+    // Positions in LOCATION_COLUMNS, so reads never look columns up by name
+    private static final int COL_ID = 0;
+    private static final int COL_NAME = 1;
+    private static final int COL_LATITUDE = 2;
+    private static final int COL_LONGITUDE = 3;
+    private static final int COL_RADIUS = 4;
+    private static final int COL_POLYGON = 5;
+
+    private static DatabaseHelper instance;
+
+    // Compiled once and reused; SQLiteStatement isn't thread-safe so use is guarded by the helper's lock
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement insertBoxStatement;
+    private SQLiteStatement deleteStatement;
+    private SQLiteStatement deleteBoxStatement;
+
+    // One helper (and so one open connection pool) per process, shared by MainActivity and LocationService
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DatabaseHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    // Tests open their own file instead of the shared instance
+    DatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // Readers don't block the writer and vice versa
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // Fresh installs build the v1 schema and then run the same migrations as upgrades,
+        // so there is only one definition of every later schema change
         String createTable = "CREATE TABLE " + TABLE_LOCATIONS + " (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "name TEXT, " +
@@ -27,48 +90,289 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 "longitude REAL, " +
                 "radius_meters REAL)";
         db.execSQL(createTable);
+        migrate(db, 1, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LOCATIONS);
-        onCreate(db);
+        migrate(db, oldVersion, newVersion);
+    }
+
+    // SQLiteOpenHelper already wraps onCreate/onUpgrade in a transaction
+    private static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            MIGRATIONS[version - 1].migrate(db);
+        }
+    }
+
+    private static void migrateToV2(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_LOCATIONS_BBOX + " (" +
+                "id INTEGER PRIMARY KEY, " +
+                "min_lat REAL, " +
+                "max_lat REAL, " +
+                "min_lng REAL, " +
+                "max_lng REAL)");
+        db.execSQL("CREATE INDEX " + TABLE_LOCATIONS_BBOX + "_bounds ON " + TABLE_LOCATIONS_BBOX
+                + " (min_lat, max_lat, min_lng, max_lng)");
+
+        // The box depends on cos(latitude), which SQLite can't compute everywhere, so backfill from Java
+        // Only columns that exist at v1; LOCATION_COLUMNS describes the current schema
+        SQLiteStatement insertBox = db.compileStatement(INSERT_BOX_SQL);
+        Cursor cursor = db.query(TABLE_LOCATIONS, new String[] { "id", "latitude", "longitude", "radius_meters" },
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                bindBox(insertBox, cursor.getLong(0), cursor.getDouble(1), cursor.getDouble(2), cursor.getFloat(3));
+                insertBox.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insertBox.close();
+        }
+    }
+
+    // Polygon vertices as little-endian lat, lng doubles; NULL for circular fences. The row's
+    // latitude, longitude and radius hold the polygon's covering circle, so the boxes need no change.
+    private static void migrateToV3(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_LOCATIONS + " ADD COLUMN polygon BLOB");
+    }
+
+    private static final String INSERT_BOX_SQL = "INSERT OR REPLACE INTO " + TABLE_LOCATIONS_BBOX
+            + " (id, min_lat, max_lat, min_lng, max_lng) VALUES (?, ?, ?, ?, ?)";
+
+    private static void bindBox(SQLiteStatement statement, long id, double lat, double lng, float radius) {
+        double latSpan = FenceTable.latSpanDegrees(radius);
+        double lngSpan = FenceTable.lngSpanDegrees(lat, radius);
+        statement.bindLong(1, id);
+        statement.bindDouble(2, lat - latSpan);
+        statement.bindDouble(3, lat + latSpan);
+        statement.bindDouble(4, lng - lngSpan);
+        statement.bindDouble(5, lng + lngSpan);
     }
 
     public long insertLocation(String name, double lat, double lng, float radius) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("name", name);
-        values.put("latitude", lat);
-        values.put("longitude", lng);
-        values.put("radius_meters", radius);
-        long id = db.insert(TABLE_LOCATIONS, null, values);
-        db.close();
+        return insertLocation(name, lat, lng, radius, null);
+    }
+
+    // polygon is null for a circle; for a polygon lat/lng/radius must be its covering circle
+    public long insertLocation(String name, double lat, double lng, float radius, double[] polygon) {
+        long id;
+        synchronized (this) {
+            SQLiteDatabase db = getWritableDatabase();
+            compileInsertStatements(db);
+            db.beginTransaction();
+            try {
+                insertStatement.bindString(1, name);
+                insertStatement.bindDouble(2, lat);
+                insertStatement.bindDouble(3, lng);
+                insertStatement.bindDouble(4, radius);
+                bindPolygon(insertStatement, 5, polygon);
+                id = insertStatement.executeInsert();
+                if (id != -1) {
+                    bindBox(insertBoxStatement, id, lat, lng, radius);
+                    insertBoxStatement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insertStatement.clearBindings();
+                insertBoxStatement.clearBindings();
+            }
+        }
         return id;
     }
 
+    // Inserts a batch in a single transaction. Item ids are ignored.
+    public int insertLocations(List<LocationItem> items) {
+        int inserted = 0;
+        synchronized (this) {
+            SQLiteDatabase db = getWritableDatabase();
+            compileInsertStatements(db);
+            db.beginTransaction();
+            try {
+                for (LocationItem item : items) {
+                    insertStatement.bindString(1, item.name);
+                    insertStatement.bindDouble(2, item.latitude);
+                    insertStatement.bindDouble(3, item.longitude);
+                    insertStatement.bindDouble(4, item.radiusMeters);
+                    bindPolygon(insertStatement, 5, item.polygon);
+                    long id = insertStatement.executeInsert();
+                    if (id != -1) {
+                        // Hand the assigned id back so callers can index the new rows
+                        item.id = (int) id;
+                        bindBox(insertBoxStatement, id, item.latitude, item.longitude, item.radiusMeters);
+                        insertBoxStatement.executeInsert();
+                        inserted++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insertStatement.clearBindings();
+                insertBoxStatement.clearBindings();
+            }
+        }
+        return inserted;
+    }
+
+    // Streams every row through the visitor without materialising the whole table
+    public void forEachLocation(LocationVisitor visitor) throws IOException {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LOCATIONS, LOCATION_COLUMNS, null, null, null, null, "id");
+        try {
+            while (cursor.moveToNext()) {
+                visitor.visit(readLocation(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public int getLocationCount() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_LOCATIONS);
+    }
+
     public List<LocationItem> getAllLocations() {
-        List<LocationItem> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_LOCATIONS, null);
-        if (cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow("id"));
-                String name = cursor.getString(cursor.getColumnIndexOrThrow("name"));
-                double lat = cursor.getDouble(cursor.getColumnIndexOrThrow("latitude"));
-                double lng = cursor.getDouble(cursor.getColumnIndexOrThrow("longitude"));
-                float radius = cursor.getFloat(cursor.getColumnIndexOrThrow("radius_meters"));
-                list.add(new LocationItem(id, name, lat, lng, radius));
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return list;
-    }
-
-    public void deleteLocation(int id) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_LOCATIONS, "id = ?", new String[] { String.valueOf(id) });
-        db.close();
+        long startNanos = System.nanoTime();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LOCATIONS, LOCATION_COLUMNS, null, null, null, null, null);
+        return readLocations(cursor, startNanos);
+    }
+
+    // Keyset paging: the next `limit` rows with id > afterId. Unlike OFFSET this stays cheap deep
+    // into the table and doesn't skip or repeat rows when earlier ones are inserted or deleted.
+    public List<LocationItem> getLocationsPage(int afterId, int limit) {
+        long startNanos = System.nanoTime();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LOCATIONS, LOCATION_COLUMNS, "id > ?",
+                new String[] { String.valueOf(afterId) }, null, null, "id", String.valueOf(limit));
+        return readLocations(cursor, startNanos);
+    }
+
+    // Rows for the first count ids, in id order. Keep count well under SQLite's 999 variable limit.
+    public List<LocationItem> getLocationsByIds(int[] ids, int count) {
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+        StringBuilder selection = new StringBuilder("id IN (");
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i] = String.valueOf(ids[i]);
+        }
+        selection.append(')');
+        long startNanos = System.nanoTime();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LOCATIONS, LOCATION_COLUMNS, selection.toString(), args, null, null, "id");
+        return readLocations(cursor, startNanos);
+    }
+
+    // Only reads the two columns the name index needs
+    public void forEachName(NameVisitor visitor) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LOCATIONS, new String[] { "id", "name" }, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                visitor.visit(cursor.getInt(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Fences whose bounding box intersects the given box. The index narrows on min_lat; the other
+    // bounds are checked from the index entries without touching the table rows.
+    public List<LocationItem> getLocationsInBounds(double minLat, double maxLat, double minLng, double maxLng) {
+        long startNanos = System.nanoTime();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT l.id, l.name, l.latitude, l.longitude, l.radius_meters, l.polygon FROM "
+                + TABLE_LOCATIONS + " l JOIN " + TABLE_LOCATIONS_BBOX + " r ON l.id = r.id"
+                + " WHERE r.max_lat >= ? AND r.min_lat <= ? AND r.max_lng >= ? AND r.min_lng <= ?",
+                new String[] {
+                        String.valueOf(minLat), String.valueOf(maxLat),
+                        String.valueOf(minLng), String.valueOf(maxLng) });
+        return readLocations(cursor, startNanos);
+    }
+
+    public boolean deleteLocation(int id) {
+        int rows;
+        synchronized (this) {
+            SQLiteDatabase db = getWritableDatabase();
+            if (deleteStatement == null) {
+                deleteStatement = db.compileStatement("DELETE FROM " + TABLE_LOCATIONS + " WHERE id = ?");
+                deleteBoxStatement = db.compileStatement("DELETE FROM " + TABLE_LOCATIONS_BBOX + " WHERE id = ?");
+            }
+            db.beginTransaction();
+            try {
+                deleteStatement.bindLong(1, id);
+                rows = deleteStatement.executeUpdateDelete();
+                deleteBoxStatement.bindLong(1, id);
+                deleteBoxStatement.executeUpdateDelete();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                deleteStatement.clearBindings();
+                deleteBoxStatement.clearBindings();
+            }
+        }
+        return rows > 0;
+    }
+
+    // Caller holds the helper's lock
+    private void compileInsertStatements(SQLiteDatabase db) {
+        if (insertStatement == null) {
+            insertStatement = db.compileStatement("INSERT INTO " + TABLE_LOCATIONS
+                    + " (name, latitude, longitude, radius_meters, polygon) VALUES (?, ?, ?, ?, ?)");
+            insertBoxStatement = db.compileStatement(INSERT_BOX_SQL);
+        }
+    }
+
+    // The query itself runs lazily on the first cursor access, so timing from before db.query()
+    // to here covers both it and the row reads
+    private static List<LocationItem> readLocations(Cursor cursor, long startNanos) {
+        try {
+            List<LocationItem> list = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                list.add(readLocation(cursor));
+            }
+            return list;
+        } finally {
+            cursor.close();
+            Metrics.DB_QUERY.record((System.nanoTime() - startNanos) / 1000000);
+        }
+    }
+
+    private static LocationItem readLocation(Cursor cursor) {
+        return new LocationItem(
+                cursor.getInt(COL_ID),
+                cursor.getString(COL_NAME),
+                cursor.getDouble(COL_LATITUDE),
+                cursor.getDouble(COL_LONGITUDE),
+                cursor.getFloat(COL_RADIUS),
+                decodePolygon(cursor.isNull(COL_POLYGON) ? null : cursor.getBlob(COL_POLYGON)));
+    }
+
+    private static void bindPolygon(SQLiteStatement statement, int index, double[] polygon) {
+        if (polygon == null) {
+            statement.bindNull(index);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(polygon.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (double v : polygon) {
+            buffer.putDouble(v);
+        }
+        statement.bindBlob(index, buffer.array());
+    }
+
+    private static double[] decodePolygon(byte[] blob) {
+        if (blob == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN);
+        double[] polygon = new double[blob.length / 8];
+        for (int i = 0; i < polygon.length; i++) {
+            polygon[i] = buffer.getDouble();
+        }
+        return polygon;
     }
 }
@@ -0,0 +1,206 @@
+package com.example.wristbandapp;
+
+import android.content.Context;
+import android.location.LocationManager;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed-size ring of binary event records over a memory-mapped file, so the last few days of fixes,
+// fence decisions and GATT traffic survive the process and can be exported when a user reports a
+// missed alert. Recording claims a slot with one atomic increment and writes it with absolute puts:
+// no allocation, no locks and no syscalls, so it is safe to call from the location callback.
+// Mapping (and on first run zero-filling) the file is done on the repository's write thread; records
+// made before it is ready, in the first moments after start, are dropped.
+//
+// Record layout (little-endian, RECORD_SIZE bytes):
+//   0 long seq (written last; 0 = empty)   8 long wall-clock time ms   16 byte type   17 byte code
+//  18 short reserved                      20 int lat * 1e7            24 int lng * 1e7
+//  28 float value                         32 int arg1                 36 int arg2
+public class EventJournal {
+    private static final String TAG = "EventJournal";
+    private static final String FILE_NAME = "events.journal";
+
+    private static final int MAGIC = 0x57424A31; // "WBJ1"
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+    static final int CAPACITY = 16384;
+
+    public static final byte TYPE_FIX = 1;
+    public static final byte TYPE_ENTER = 2;
+    public static final byte TYPE_EXIT = 3;
+    public static final byte TYPE_GATT_WRITE = 4;
+    public static final byte TYPE_GATT_RESULT = 5;
+    public static final byte TYPE_ACK = 6;
+    public static final byte TYPE_MANUAL_OFF = 7;
+    // value is the predicted seconds to entry, arg2 the speed in cm/s
+    public static final byte TYPE_PREDICTED = 8;
+
+    // Fix record code: provider in the low bits, FIX_ACCEPTED when FixFilter let it through
+    public static final int PROVIDER_OTHER = 0;
+    public static final int PROVIDER_GPS = 1;
+    public static final int PROVIDER_NETWORK = 2;
+    public static final int PROVIDER_FUSED = 3;
+    public static final int PROVIDER_PASSIVE = 4;
+    public static final int FIX_ACCEPTED = 0x10;
+
+    private static final String[] TYPE_NAMES = { "", "fix", "enter", "exit", "gatt_write", "gatt_result", "ack",
+            "manual_off", "predicted" };
+    private static final String[] PROVIDER_NAMES = { "other", "gps", "network", "fused", "passive" };
+
+    private static EventJournal instance;
+
+    // null until the file is mapped, and for good if it couldn't be; record calls are then no-ops
+    private volatile MappedByteBuffer buffer;
+    private final AtomicLong nextSeq = new AtomicLong(1);
+
+    public static synchronized EventJournal getInstance(Context context) {
+        if (instance == null) {
+            EventJournal journal = new EventJournal();
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            LocationRepository.getInstance(context).executeOnWriteThread(() -> journal.open(file));
+            instance = journal;
+        }
+        return instance;
+    }
+
+    private EventJournal() {
+    }
+
+    private void open(File file) {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // The mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) RECORD_SIZE * CAPACITY);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != RECORD_SIZE || mapped.getInt(8) != CAPACITY) {
+                // New file or a different layout; start over
+                for (int i = 0; i < mapped.capacity(); i += 8) {
+                    mapped.putLong(i, 0);
+                }
+                mapped.putInt(0, MAGIC);
+                mapped.putInt(4, RECORD_SIZE);
+                mapped.putInt(8, CAPACITY);
+            } else {
+                long maxSeq = 0;
+                for (int slot = 0; slot < CAPACITY; slot++) {
+                    maxSeq = Math.max(maxSeq, mapped.getLong(HEADER_SIZE + slot * RECORD_SIZE));
+                }
+                nextSeq.set(maxSeq + 1);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot map " + file + ", journal disabled", e);
+            return;
+        }
+        // Published last, after nextSeq, so the first record continues the existing sequence
+        buffer = mapped;
+    }
+
+    public void recordFix(long timeMs, double lat, double lng, float accuracy, String provider, boolean accepted) {
+        append(timeMs, TYPE_FIX, providerCode(provider) | (accepted ? FIX_ACCEPTED : 0), lat, lng, accuracy, 0, 0);
+    }
+
+    // Position and accuracy are those of the fix that made the decision
+    public void recordFence(byte type, int fenceId, double lat, double lng, float accuracy) {
+        append(System.currentTimeMillis(), type, 0, lat, lng, accuracy, fenceId, 0);
+    }
+
+    public void recordPrediction(int fenceId, double lat, double lng, float secondsToEntry, float speedMps) {
+        append(System.currentTimeMillis(), TYPE_PREDICTED, 0, lat, lng, secondsToEntry, fenceId,
+                Math.round(speedMps * 100));
+    }
+
+    public void recordGattWrite(int opcode, int seq, int commandCount, boolean accepted) {
+        append(System.currentTimeMillis(), TYPE_GATT_WRITE, accepted ? 1 : 0, 0, 0, commandCount, opcode, seq);
+    }
+
+    public void recordGattResult(int status) {
+        append(System.currentTimeMillis(), TYPE_GATT_RESULT, 0, 0, 0, 0, status, 0);
+    }
+
+    public void recordAck(int seq, int status) {
+        append(System.currentTimeMillis(), TYPE_ACK, 0, 0, 0, 0, seq, status);
+    }
+
+    public void recordManualOff() {
+        append(System.currentTimeMillis(), TYPE_MANUAL_OFF, 0, 0, 0, 0, 0, 0);
+    }
+
+    private void append(long timeMs, byte type, int code, double lat, double lng, float value, int arg1, int arg2) {
+        MappedByteBuffer b = buffer;
+        if (b == null) {
+            return;
+        }
+        long seq = nextSeq.getAndIncrement();
+        int base = HEADER_SIZE + (int) ((seq - 1) % CAPACITY) * RECORD_SIZE;
+        // Invalidate the slot first so an export racing with this write skips it rather than mixing records
+        b.putLong(base, 0);
+        b.putLong(base + 8, timeMs);
+        b.put(base + 16, type);
+        b.put(base + 17, (byte) code);
+        b.putInt(base + 20, (int) Math.round(lat * 1e7));
+        b.putInt(base + 24, (int) Math.round(lng * 1e7));
+        b.putFloat(base + 28, value);
+        b.putInt(base + 32, arg1);
+        b.putInt(base + 36, arg2);
+        b.putLong(base, seq);
+    }
+
+    // Writes every record still in the ring as CSV, oldest first. Returns the number of rows.
+    public int exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("seq,time_ms,event,code,lat,lng,value,arg1,arg2\n");
+        int rows = 0;
+        MappedByteBuffer b = buffer;
+        if (b != null) {
+            long end = nextSeq.get();
+            for (long seq = Math.max(1, end - CAPACITY); seq < end; seq++) {
+                int base = HEADER_SIZE + (int) ((seq - 1) % CAPACITY) * RECORD_SIZE;
+                if (b.getLong(base) != seq) {
+                    continue;
+                }
+                int type = b.get(base + 16);
+                int code = b.get(base + 17) & 0xFF;
+                writer.write(seq + "," + b.getLong(base + 8) + ","
+                        + (type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : String.valueOf(type)) + ","
+                        + (type == TYPE_FIX ? describeFixCode(code) : String.valueOf(code)) + ","
+                        + b.getInt(base + 20) / 1e7 + "," + b.getInt(base + 24) / 1e7 + ","
+                        + b.getFloat(base + 28) + "," + b.getInt(base + 32) + "," + b.getInt(base + 36) + "\n");
+                rows++;
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private static String describeFixCode(int code) {
+        int provider = code & 0x0F;
+        return (provider < PROVIDER_NAMES.length ? PROVIDER_NAMES[provider] : "other")
+                + ((code & FIX_ACCEPTED) != 0 ? "" : "/rejected");
+    }
+
+    private static int providerCode(String provider) {
+        if (LocationManager.GPS_PROVIDER.equals(provider)) {
+            return PROVIDER_GPS;
+        } else if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+            return PROVIDER_NETWORK;
+        } else if ("fused".equals(provider)) {
+            return PROVIDER_FUSED;
+        } else if (LocationManager.PASSIVE_PROVIDER.equals(provider)) {
+            return PROVIDER_PASSIVE;
+        }
+        return PROVIDER_OTHER;
+    }
+}
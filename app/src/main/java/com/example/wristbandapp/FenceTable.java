@@ -0,0 +1,336 @@
+package com.example.wristbandapp;
+
+import java.util.Arrays;
+
+// Struct-of-arrays storage for fences plus the distance kernel used on every fix. Circles are tested
+// directly; polygons are stored as their covering circle plus a precomputed Polygon, and a fix outside
+// the polygon's bounding box is rejected after one or two comparisons.
+// Pure Java and allocation-free once built, so it can run (and be tested) off-device.
+public class FenceTable {
+    static final double EARTH_RADIUS_METERS = 6371008.8;
+    static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+    // Below this relative error band the equirectangular estimate is trusted as-is
+    private static final double APPROX_TOLERANCE = 0.01;
+    private static final double BOX_MARGIN = 1.01;
+
+    double[] lat;
+    double[] lng;
+    float[] radius;
+    // Precomputed per fence so the kernel never calls cos() for the fence side
+    double[] cosLat;
+    int[] ids;
+    LocationItem[] items;
+    // null for circles
+    Polygon[] polygons;
+
+    private int highWater;
+    private int[] freeSlots;
+    private int freeCount;
+
+    public FenceTable(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 4);
+        lat = new double[capacity];
+        lng = new double[capacity];
+        radius = new float[capacity];
+        cosLat = new double[capacity];
+        ids = new int[capacity];
+        items = new LocationItem[capacity];
+        polygons = new Polygon[capacity];
+        freeSlots = new int[4];
+    }
+
+    public FenceTable(FenceTable other) {
+        lat = other.lat.clone();
+        lng = other.lng.clone();
+        radius = other.radius.clone();
+        cosLat = other.cosLat.clone();
+        ids = other.ids.clone();
+        items = other.items.clone();
+        // Polygons are immutable once built, so sharing them is safe
+        polygons = other.polygons.clone();
+        highWater = other.highWater;
+        freeSlots = other.freeSlots.clone();
+        freeCount = other.freeCount;
+    }
+
+    public int add(LocationItem item) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == lat.length) {
+                grow();
+            }
+            slot = highWater++;
+        }
+        lat[slot] = item.latitude;
+        lng[slot] = item.longitude;
+        radius[slot] = item.radiusMeters;
+        cosLat[slot] = Math.cos(Math.toRadians(item.latitude));
+        ids[slot] = item.id;
+        items[slot] = item;
+        polygons[slot] = item.polygon != null && item.polygon.length >= 6
+                ? new Polygon(item.polygon, item.latitude, item.longitude, cosLat[slot])
+                : null;
+        return slot;
+    }
+
+    public void remove(int slot) {
+        items[slot] = null;
+        polygons[slot] = null;
+        radius[slot] = -1f; // never matches
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    public LocationItem item(int slot) {
+        return items[slot];
+    }
+
+    public int size() {
+        return highWater - freeCount;
+    }
+
+    public boolean contains(int slot, double pointLat, double pointLng) {
+        return contains(slot, pointLat, pointLng, 0f);
+    }
+
+    // Cheap bounding-box and equirectangular rejects first; the haversine distance is only
+    // computed when the point lands within APPROX_TOLERANCE of the radius.
+    public boolean contains(int slot, double pointLat, double pointLng, float marginMeters) {
+        if (radius[slot] < 0) {
+            return false;
+        }
+        if (polygons[slot] != null) {
+            return containsPolygon(slot, pointLat, pointLng, marginMeters);
+        }
+        double r = radius[slot] + marginMeters;
+        double dy = Math.abs(pointLat - lat[slot]) * METERS_PER_DEGREE;
+        if (dy > r * (1 + APPROX_TOLERANCE)) {
+            return false;
+        }
+        double dLng = Math.abs(pointLng - lng[slot]);
+        if (dLng > 180) {
+            dLng = 360 - dLng;
+        }
+        double dx = dLng * METERS_PER_DEGREE * cosLat[slot];
+        if (dx > r * (1 + APPROX_TOLERANCE)) {
+            return false;
+        }
+
+        double approxSq = dx * dx + dy * dy;
+        double inner = r * (1 - APPROX_TOLERANCE);
+        if (approxSq <= inner * inner) {
+            return true;
+        }
+        double outer = r * (1 + APPROX_TOLERANCE);
+        if (approxSq > outer * outer) {
+            return false;
+        }
+        return haversineMeters(pointLat, pointLng, lat[slot], lng[slot]) <= r;
+    }
+
+    // Equirectangular distance from the point to the fence boundary, 0 when inside.
+    // Good enough for scheduling decisions, not for the enter/exit test itself.
+    public double approxEdgeDistance(int slot, double pointLat, double pointLng) {
+        double r = radius[slot];
+        if (r < 0) {
+            return Double.MAX_VALUE;
+        }
+        Polygon polygon = polygons[slot];
+        if (polygon != null) {
+            double y = (pointLat - lat[slot]) * METERS_PER_DEGREE;
+            double x = signedLngDelta(pointLng, lng[slot]) * METERS_PER_DEGREE * cosLat[slot];
+            return polygon.contains(x, y) ? 0 : Math.sqrt(polygon.edgeDistanceSq(x, y));
+        }
+        double dy = (pointLat - lat[slot]) * METERS_PER_DEGREE;
+        double dLng = Math.abs(pointLng - lng[slot]);
+        if (dLng > 180) {
+            dLng = 360 - dLng;
+        }
+        double dx = dLng * METERS_PER_DEGREE * cosLat[slot];
+        return Math.max(0, Math.sqrt(dx * dx + dy * dy) - r);
+    }
+
+    // Seconds until a point moving at (velocityEast, velocityNorth) m/s in a straight line crosses
+    // into the fence: 0 when already inside, +Infinity when the line misses it or leads away.
+    public double secondsToEntry(int slot, double pointLat, double pointLng, double velocityEast,
+            double velocityNorth) {
+        if (radius[slot] < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = (pointLat - lat[slot]) * METERS_PER_DEGREE;
+        double x = signedLngDelta(pointLng, lng[slot]) * METERS_PER_DEGREE * cosLat[slot];
+        Polygon polygon = polygons[slot];
+        if (polygon != null) {
+            return polygon.contains(x, y) ? 0 : polygon.secondsToEntry(x, y, velocityEast, velocityNorth);
+        }
+        // |p + v t| = r, earliest root
+        double r = radius[slot];
+        double a = velocityEast * velocityEast + velocityNorth * velocityNorth;
+        double b = 2 * (x * velocityEast + y * velocityNorth);
+        double c = x * x + y * y - r * r;
+        if (c <= 0) {
+            return 0;
+        }
+        double disc = b * b - 4 * a * c;
+        if (a == 0 || disc < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (-b - Math.sqrt(disc)) / (2 * a);
+        return t >= 0 ? t : Double.POSITIVE_INFINITY;
+    }
+
+    // Works in meters on a plane tangent at the fence centre, which is accurate to well under a
+    // meter for fences a few kilometers across
+    private boolean containsPolygon(int slot, double pointLat, double pointLng, float marginMeters) {
+        Polygon polygon = polygons[slot];
+        double y = (pointLat - lat[slot]) * METERS_PER_DEGREE;
+        if (y < polygon.minY - marginMeters || y > polygon.maxY + marginMeters) {
+            return false;
+        }
+        double x = signedLngDelta(pointLng, lng[slot]) * METERS_PER_DEGREE * cosLat[slot];
+        if (x < polygon.minX - marginMeters || x > polygon.maxX + marginMeters) {
+            return false;
+        }
+        if (polygon.contains(x, y)) {
+            return true;
+        }
+        return marginMeters > 0 && polygon.edgeDistanceSq(x, y) <= (double) marginMeters * marginMeters;
+    }
+
+    private static double signedLngDelta(double pointLng, double centreLng) {
+        double d = pointLng - centreLng;
+        if (d > 180) {
+            d -= 360;
+        } else if (d < -180) {
+            d += 360;
+        }
+        return d;
+    }
+
+    // A polygon projected to meters around its fence centre (x east, y north), with its bounding box
+    // and each edge's dx/dy so the crossing test needs no division.
+    static final class Polygon {
+        final double[] xs;
+        final double[] ys;
+        // slopes[i] belongs to the edge from vertex i-1 (wrapping) to vertex i
+        final double[] slopes;
+        final double minX;
+        final double maxX;
+        final double minY;
+        final double maxY;
+
+        Polygon(double[] vertices, double centreLat, double centreLng, double cosLat) {
+            int n = vertices.length / 2;
+            xs = new double[n];
+            ys = new double[n];
+            slopes = new double[n];
+            double x0 = Double.MAX_VALUE;
+            double x1 = -Double.MAX_VALUE;
+            double y0 = Double.MAX_VALUE;
+            double y1 = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                ys[i] = (vertices[2 * i] - centreLat) * METERS_PER_DEGREE;
+                xs[i] = signedLngDelta(vertices[2 * i + 1], centreLng) * METERS_PER_DEGREE * cosLat;
+                x0 = Math.min(x0, xs[i]);
+                x1 = Math.max(x1, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double dy = ys[j] - ys[i];
+                // Horizontal edges never straddle a ray, so their slope is never read
+                slopes[i] = dy != 0 ? (xs[j] - xs[i]) / dy : 0;
+            }
+            minX = x0;
+            maxX = x1;
+            minY = y0;
+            maxY = y1;
+        }
+
+        // Even-odd ray casting towards +x
+        boolean contains(double x, double y) {
+            boolean inside = false;
+            int n = xs.length;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                if ((ys[i] > y) != (ys[j] > y) && x < xs[i] + (y - ys[i]) * slopes[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        // Earliest time the ray p + v t crosses an edge, +Infinity if none
+        double secondsToEntry(double x, double y, double vx, double vy) {
+            double best = Double.POSITIVE_INFINITY;
+            int n = xs.length;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double ex = xs[j] - xs[i];
+                double ey = ys[j] - ys[i];
+                double denom = vx * ey - vy * ex;
+                if (denom == 0) {
+                    continue;
+                }
+                double ax = xs[i] - x;
+                double ay = ys[i] - y;
+                double t = (ax * ey - ay * ex) / denom;
+                double s = (ax * vy - ay * vx) / denom;
+                if (t >= 0 && s >= 0 && s <= 1) {
+                    best = Math.min(best, t);
+                }
+            }
+            return best;
+        }
+
+        // Squared distance from the point to the nearest edge
+        double edgeDistanceSq(double x, double y) {
+            double best = Double.MAX_VALUE;
+            int n = xs.length;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double ex = xs[j] - xs[i];
+                double ey = ys[j] - ys[i];
+                double lengthSq = ex * ex + ey * ey;
+                double t = lengthSq > 0 ? ((x - xs[i]) * ex + (y - ys[i]) * ey) / lengthSq : 0;
+                t = Math.max(0, Math.min(1, t));
+                double dx = x - (xs[i] + t * ex);
+                double dy = y - (ys[i] + t * ey);
+                best = Math.min(best, dx * dx + dy * dy);
+            }
+            return best;
+        }
+    }
+
+    // Half-extents of a circle's bounding box in degrees, with slack for the spherical approximation
+    public static double latSpanDegrees(double meters) {
+        return meters * BOX_MARGIN / METERS_PER_DEGREE;
+    }
+
+    public static double lngSpanDegrees(double lat, double meters) {
+        // Clamp so the span stays finite near the poles
+        double cos = Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        return meters * BOX_MARGIN / (METERS_PER_DEGREE * cos);
+    }
+
+    static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDLambda = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double a = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void grow() {
+        int capacity = lat.length * 2;
+        lat = Arrays.copyOf(lat, capacity);
+        lng = Arrays.copyOf(lng, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        cosLat = Arrays.copyOf(cosLat, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        items = Arrays.copyOf(items, capacity);
+        polygons = Arrays.copyOf(polygons, capacity);
+    }
+}
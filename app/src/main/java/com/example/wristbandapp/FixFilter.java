@@ -0,0 +1,77 @@
+package com.example.wristbandapp;
+
+// Sits between the location providers and the geofence check. Drops stale and low-accuracy
+// fixes, and merges fixes that arrive within a short window (typically the GPS and NETWORK
+// answers for the same moment) into one accuracy-weighted position.
+public class FixFilter {
+    static final long MAX_AGE_MS = 30000;
+    static final float MAX_ACCURACY_METERS = 100f;
+    static final long MERGE_WINDOW_MS = 2000;
+    // A fix this much coarser than the one just accepted adds nothing within the merge window
+    private static final float COARSER_FACTOR = 1.5f;
+    // Merged positions that moved less than this are treated as duplicates
+    private static final double DUPLICATE_METERS = 1.0;
+
+    private boolean hasFix = false;
+    private long timeMs;
+    private double lat;
+    private double lng;
+    private float accuracy;
+
+    // Returns true when the fix (possibly merged with the previous one) should be evaluated.
+    // fixTimeMs and nowMs must come from the same monotonic clock.
+    public boolean offer(long fixTimeMs, long nowMs, double fixLat, double fixLng, float fixAccuracy) {
+        if (nowMs - fixTimeMs > MAX_AGE_MS) {
+            return false;
+        }
+        if (!(fixAccuracy > 0) || fixAccuracy > MAX_ACCURACY_METERS) {
+            return false;
+        }
+        if (!hasFix || fixTimeMs - timeMs > MERGE_WINDOW_MS) {
+            accept(fixTimeMs, fixLat, fixLng, fixAccuracy);
+            return true;
+        }
+        if (fixTimeMs < timeMs - MERGE_WINDOW_MS || fixAccuracy > accuracy * COARSER_FACTOR) {
+            return false;
+        }
+
+        // Inverse-variance weighting; keep the better accuracy rather than claiming the
+        // combination is more precise than either source, since the errors are correlated
+        double w1 = 1.0 / ((double) accuracy * accuracy);
+        double w2 = 1.0 / ((double) fixAccuracy * fixAccuracy);
+        double mergedLat = (lat * w1 + fixLat * w2) / (w1 + w2);
+        double mergedLng = (lng * w1 + fixLng * w2) / (w1 + w2);
+        float mergedAccuracy = Math.min(accuracy, fixAccuracy);
+
+        double dy = (mergedLat - lat) * FenceTable.METERS_PER_DEGREE;
+        double dx = (mergedLng - lng) * FenceTable.METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        boolean moved = dx * dx + dy * dy >= DUPLICATE_METERS * DUPLICATE_METERS;
+        boolean improved = mergedAccuracy < accuracy;
+        accept(Math.max(timeMs, fixTimeMs), mergedLat, mergedLng, mergedAccuracy);
+        return moved || improved;
+    }
+
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    public double getLatitude() {
+        return lat;
+    }
+
+    public double getLongitude() {
+        return lng;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    private void accept(long fixTimeMs, double fixLat, double fixLng, float fixAccuracy) {
+        hasFix = true;
+        timeMs = fixTimeMs;
+        lat = fixLat;
+        lng = fixLng;
+        accuracy = fixAccuracy;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.wristbandapp;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Android allows a single outstanding GATT operation, so writes are queued and the next one is
+// only issued once the previous one finished (or it times out).
+// Without acks a write is finished when onCharacteristicWrite reports it. When the wristband
+// speaks AlertProtocol, several commands can share one write and a command is only finished when
+// its ack arrives on the TX characteristic. Without acks only ON/OFF can be sent at all; other
+// commands are dropped when they reach the head of the queue.
+// All methods must be called on the handler's thread.
+public class GattCommandQueue {
+    private static final String TAG = "GattCommandQueue";
+    private static final TraceLog.Event LOG_TIMEOUT = new TraceLog.Event(Log.WARN, TAG,
+            "Write timed out after %dms (%d commands)");
+    private static final TraceLog.Event LOG_CONFIRMED = new TraceLog.Event(Log.DEBUG, TAG,
+            "Write confirmed %dms after enqueue");
+    private static final TraceLog.Event LOG_ACK = new TraceLog.Event(Log.DEBUG, TAG, "Ack for seq %d after %dms");
+    private static final TraceLog.Event LOG_REJECTED = new TraceLog.Event(Log.ERROR, TAG,
+            "Wristband rejected seq %d with status %d");
+    private static final TraceLog.Event LOG_BUSY_DROP = new TraceLog.Event(Log.ERROR, TAG,
+            "Dropping %d commands, stack refused them %d times");
+    private static final TraceLog.Event LOG_LEGACY_DROP = new TraceLog.Event(Log.WARN, TAG,
+            "Dropping opcode %d, legacy firmware has no encoding for it");
+    private static final TraceLog.Event LOG_RETRY_DROP = new TraceLog.Event(Log.ERROR, TAG,
+            "Dropping seq %d after %d attempts");
+    static final long WRITE_TIMEOUT_MS = 2000;
+    static final int MAX_ATTEMPTS = 3;
+    // writeCharacteristic() returns false while the stack is still busy with something else
+    private static final long BUSY_RETRY_MS = 100;
+    private static final int MAX_BUSY_RETRIES = 20;
+
+    public interface Transport {
+        // Sends the batch as a single characteristic write; false if the stack refused it
+        boolean write(List<Command> batch);
+    }
+
+    public static class Command {
+        final String coalesceKey;
+        final AlertProtocol.Command body;
+        final int seq;
+        int attempts;
+        int busyRetries;
+        long enqueuedAtMs;
+        long sentAtMs;
+
+        Command(String coalesceKey, AlertProtocol.Command body, int seq) {
+            this.coalesceKey = coalesceKey;
+            this.body = body;
+            this.seq = seq;
+            this.enqueuedAtMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final Handler handler;
+    private final Transport transport;
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    private final List<Command> inFlight = new ArrayList<>();
+    private boolean ready = false;
+    private int nextSeq = 0;
+
+    private boolean ackRequired = false;
+    private int maxPacketBytes = 1;
+    private long lastRoundTripMs = -1;
+
+    // The stack reports writes in the order it accepted them, so completions are matched to writes by
+    // counting. A write abandoned on timeout can still complete late; it must not finish whatever has
+    // been sent since.
+    private int writesIssued = 0;
+    private int writesCompleted = 0;
+    private int inFlightWrite = -1;
+
+    private final Runnable timeoutRunnable = this::onWriteTimeout;
+
+    private final Runnable issueRunnable = this::issueNext;
+
+    public GattCommandQueue(Handler handler, Transport transport) {
+        this.handler = handler;
+        this.transport = transport;
+    }
+
+    // Commands sharing a coalesceKey collapse into the most recent one while still queued,
+    // e.g. a pending ON followed by OFF only sends OFF.
+    public void enqueue(String coalesceKey, AlertProtocol.Command body) {
+        if (coalesceKey != null) {
+            Iterator<Command> it = pending.iterator();
+            while (it.hasNext()) {
+                Command queued = it.next();
+                if (coalesceKey.equals(queued.coalesceKey)) {
+                    it.remove();
+                }
+            }
+        }
+        pending.addLast(new Command(coalesceKey, body, nextSeq));
+        nextSeq = (nextSeq + 1) & 0xFF;
+        issueNext();
+    }
+
+    // ackRequired: completion comes from onAck() rather than onWriteComplete().
+    // maxPacketBytes: how many bytes of AlertProtocol frames may share one write when acks are on.
+    public void setProtocol(boolean ackRequired, int maxPacketBytes) {
+        this.ackRequired = ackRequired;
+        this.maxPacketBytes = maxPacketBytes;
+    }
+
+    public void onWriteComplete(boolean success) {
+        int write = writesCompleted++;
+        if (write != inFlightWrite || inFlight.isEmpty()) {
+            return;
+        }
+        if (!success) {
+            handler.removeCallbacks(timeoutRunnable);
+            retryOrDrop();
+        } else if (!ackRequired) {
+            handler.removeCallbacks(timeoutRunnable);
+            Command command = inFlight.get(0);
+            TraceLog.log(LOG_CONFIRMED, SystemClock.elapsedRealtime() - command.enqueuedAtMs);
+            inFlight.clear();
+            issueNext();
+        }
+        // With acks, a successful write just means the packet left the phone; keep waiting
+    }
+
+    public void onAck(int seq, int status) {
+        for (int i = 0; i < inFlight.size(); i++) {
+            Command command = inFlight.get(i);
+            if (command.seq != seq) {
+                continue;
+            }
+            inFlight.remove(i);
+            lastRoundTripMs = SystemClock.elapsedRealtime() - command.sentAtMs;
+            if (status == AlertProtocol.ACK_OK) {
+                TraceLog.log(LOG_ACK, seq, lastRoundTripMs);
+            } else {
+                // Resending a frame the wristband rejected won't help
+                TraceLog.log(LOG_REJECTED, seq, status);
+            }
+            break;
+        }
+        if (inFlight.isEmpty()) {
+            handler.removeCallbacks(timeoutRunnable);
+            issueNext();
+        }
+    }
+
+    // Posted WRITE_TIMEOUT_MS after every accepted write; package-private so tests can fire it
+    void onWriteTimeout() {
+        if (!inFlight.isEmpty()) {
+            TraceLog.log(LOG_TIMEOUT, WRITE_TIMEOUT_MS, inFlight.size());
+            retryOrDrop();
+        }
+    }
+
+    public long getLastRoundTripMs() {
+        return lastRoundTripMs;
+    }
+
+    // Writes are held while the link is down and resume once services are available again.
+    // Whatever was in flight at disconnect is retried first.
+    public void setReady(boolean ready) {
+        this.ready = ready;
+        if (!ready) {
+            handler.removeCallbacks(timeoutRunnable);
+            handler.removeCallbacks(issueRunnable);
+            requeueInFlight();
+            // No callbacks arrive for writes that were pending when the link dropped
+            writesCompleted = writesIssued;
+            inFlightWrite = -1;
+        } else {
+            issueNext();
+        }
+    }
+
+    public void clear() {
+        handler.removeCallbacks(timeoutRunnable);
+        handler.removeCallbacks(issueRunnable);
+        pending.clear();
+        inFlight.clear();
+    }
+
+    private void issueNext() {
+        if (!ready || !inFlight.isEmpty() || pending.isEmpty()) {
+            return;
+        }
+        if (!ackRequired) {
+            // Firmware without acks only knows ON/OFF; sent anyway, e.g. a PING would read as OFF
+            while (!pending.isEmpty() && !AlertProtocol.isLegacyEncodable(pending.peekFirst().body)) {
+                TraceLog.log(LOG_LEGACY_DROP, pending.pollFirst().body.opcode);
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+        }
+        int packetBytes = 1;
+        do {
+            Command next = pending.peekFirst();
+            if (!inFlight.isEmpty() && packetBytes + next.body.encodedSize() > maxPacketBytes) {
+                break;
+            }
+            packetBytes += next.body.encodedSize();
+            inFlight.add(pending.pollFirst());
+        } while (ackRequired && !pending.isEmpty());
+
+        long now = SystemClock.elapsedRealtime();
+        for (Command command : inFlight) {
+            command.attempts++;
+            command.sentAtMs = now;
+        }
+        if (transport.write(inFlight)) {
+            inFlightWrite = writesIssued++;
+            handler.postDelayed(timeoutRunnable, WRITE_TIMEOUT_MS);
+            return;
+        }
+
+        Command first = inFlight.get(0);
+        if (++first.busyRetries > MAX_BUSY_RETRIES) {
+            TraceLog.log(LOG_BUSY_DROP, inFlight.size(), first.busyRetries);
+            inFlight.clear();
+            issueNext();
+        } else {
+            // Not an attempt that reached the air; try again shortly without burning a retry
+            for (Command command : inFlight) {
+                command.attempts--;
+            }
+            requeueInFlight();
+            handler.removeCallbacks(issueRunnable);
+            handler.postDelayed(issueRunnable, BUSY_RETRY_MS);
+        }
+    }
+
+    private void retryOrDrop() {
+        Iterator<Command> it = inFlight.iterator();
+        while (it.hasNext()) {
+            Command command = it.next();
+            if (command.attempts >= MAX_ATTEMPTS) {
+                TraceLog.log(LOG_RETRY_DROP, command.seq, command.attempts);
+                it.remove();
+            }
+        }
+        requeueInFlight();
+        issueNext();
+    }
+
+    private void requeueInFlight() {
+        // Walk backwards so the batch keeps its original order at the head of the queue
+        for (int i = inFlight.size() - 1; i >= 0; i--) {
+            Command command = inFlight.get(i);
+            if (!isSuperseded(command)) {
+                pending.addFirst(command);
+            }
+        }
+        inFlight.clear();
+    }
+
+    // A newer command with the same key replaces one that has to be resent
+    private boolean isSuperseded(Command command) {
+        if (command.coalesceKey == null) {
+            return false;
+        }
+        for (Command queued : pending) {
+            if (command.coalesceKey.equals(queued.coalesceKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
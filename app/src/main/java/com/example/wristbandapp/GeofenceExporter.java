@@ -0,0 +1,141 @@
+package com.example.wristbandapp;
+
+import android.util.JsonWriter;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Streams every saved location out as CSV, GeoJSON or GPX, straight from the database cursor.
+// The output of each format is accepted back by GeofenceImporter. Only GeoJSON keeps polygon fences;
+// CSV and GPX have no place for the vertices and write the polygon's covering circle instead.
+public class GeofenceExporter {
+    private static final String GPX_NS = "http://www.topografix.com/GPX/1/1";
+    // Radius has no GPX equivalent, so it goes into a private extension element
+    private static final String WRISTBAND_NS = "urn:wristbandapp:gpx:1";
+    private static final int PROGRESS_EVERY = 500;
+
+    public interface ProgressListener {
+        void onProgress(int exported, int total);
+    }
+
+    private final DatabaseHelper databaseHelper;
+
+    public GeofenceExporter(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    public int exportTo(OutputStream out, GeofenceFormat format, ProgressListener listener) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        int total = databaseHelper.getLocationCount();
+        int[] exported = { 0 };
+        switch (format) {
+            case GEOJSON: {
+                JsonWriter json = new JsonWriter(writer);
+                json.beginObject();
+                json.name("type").value("FeatureCollection");
+                json.name("features").beginArray();
+                databaseHelper.forEachLocation(item -> {
+                    json.beginObject();
+                    json.name("type").value("Feature");
+                    json.name("geometry").beginObject();
+                    if (item.polygon != null) {
+                        json.name("type").value("Polygon");
+                        json.name("coordinates").beginArray().beginArray();
+                        // GeoJSON rings are closed and positions are [longitude, latitude]
+                        for (int i = 0; i <= item.polygon.length; i += 2) {
+                            int v = i % item.polygon.length;
+                            json.beginArray().value(item.polygon[v + 1]).value(item.polygon[v]).endArray();
+                        }
+                        json.endArray().endArray();
+                    } else {
+                        json.name("type").value("Point");
+                        json.name("coordinates").beginArray().value(item.longitude).value(item.latitude).endArray();
+                    }
+                    json.endObject();
+                    json.name("properties").beginObject();
+                    json.name("name").value(item.name);
+                    if (item.polygon == null) {
+                        json.name("radius").value(item.radiusMeters);
+                    }
+                    json.endObject();
+                    json.endObject();
+                    reportProgress(listener, ++exported[0], total);
+                });
+                json.endArray();
+                json.endObject();
+                json.flush();
+                break;
+            }
+            case GPX: {
+                XmlSerializer xml = Xml.newSerializer();
+                xml.setOutput(writer);
+                xml.startDocument("UTF-8", null);
+                xml.setPrefix("", GPX_NS);
+                xml.setPrefix("wb", WRISTBAND_NS);
+                xml.startTag(GPX_NS, "gpx");
+                xml.attribute(null, "version", "1.1");
+                xml.attribute(null, "creator", "WristbandApp");
+                databaseHelper.forEachLocation(item -> {
+                    xml.startTag(GPX_NS, "wpt");
+                    xml.attribute(null, "lat", String.valueOf(item.latitude));
+                    xml.attribute(null, "lon", String.valueOf(item.longitude));
+                    xml.startTag(GPX_NS, "name").text(item.name != null ? item.name : "").endTag(GPX_NS, "name");
+                    xml.startTag(GPX_NS, "extensions");
+                    xml.startTag(WRISTBAND_NS, "radius").text(String.valueOf(item.radiusMeters))
+                            .endTag(WRISTBAND_NS, "radius");
+                    xml.endTag(GPX_NS, "extensions");
+                    xml.endTag(GPX_NS, "wpt");
+                    reportProgress(listener, ++exported[0], total);
+                });
+                xml.endTag(GPX_NS, "gpx");
+                xml.endDocument();
+                break;
+            }
+            default: {
+                writer.write("name,latitude,longitude,radius_meters\n");
+                databaseHelper.forEachLocation(item -> {
+                    writer.write(quoteCsv(item.name));
+                    writer.write(',');
+                    writer.write(String.valueOf(item.latitude));
+                    writer.write(',');
+                    writer.write(String.valueOf(item.longitude));
+                    writer.write(',');
+                    writer.write(String.valueOf(item.radiusMeters));
+                    writer.write('\n');
+                    reportProgress(listener, ++exported[0], total);
+                });
+                break;
+            }
+        }
+        writer.flush();
+        if (listener != null) {
+            listener.onProgress(exported[0], total);
+        }
+        return exported[0];
+    }
+
+    private static void reportProgress(ProgressListener listener, int exported, int total) {
+        if (listener != null && exported % PROGRESS_EVERY == 0) {
+            listener.onProgress(exported, total);
+        }
+    }
+
+    static String quoteCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        // The importer reads one record per line
+        value = value.replace('\n', ' ').replace('\r', ' ');
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.wristbandapp;
+
+public enum GeofenceFormat {
+    CSV("text/csv", "csv"),
+    GEOJSON("application/geo+json", "geojson"),
+    GPX("application/gpx+xml", "gpx");
+
+    public final String mimeType;
+    public final String extension;
+
+    GeofenceFormat(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    // Guess from the first non-whitespace character: '{' is GeoJSON, '<' is GPX, anything else CSV
+    public static GeofenceFormat sniff(int firstChar) {
+        if (firstChar == '{') {
+            return GEOJSON;
+        }
+        if (firstChar == '<') {
+            return GPX;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.wristbandapp;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Streams CSV, GeoJSON (Point and Polygon features) or GPX waypoints through LocationRepository. Only one chunk of
+// parsed rows is held at a time and each chunk is written in its own transaction, so memory use
+// does not depend on the file size.
+public class GeofenceImporter {
+    private static final String TAG = "GeofenceImporter";
+    static final int CHUNK_SIZE = 500;
+    static final float DEFAULT_RADIUS_METERS = 50f;
+
+    public interface ProgressListener {
+        // totalBytes is -1 when the size of the source is unknown
+        void onProgress(int imported, long bytesRead, long totalBytes);
+    }
+
+    public static class Result {
+        public final int imported;
+        public final int skipped;
+
+        Result(int imported, int skipped) {
+            this.imported = imported;
+            this.skipped = skipped;
+        }
+    }
+
+    private final LocationRepository repository;
+    private final List<LocationItem> chunk = new ArrayList<>(CHUNK_SIZE);
+    private ProgressListener progressListener;
+    private CountingInputStream counter;
+    private long totalBytes;
+    private int imported;
+    private int skipped;
+
+    // Package-private: imports run on the repository's write thread via LocationRepository.importLocations
+    GeofenceImporter(LocationRepository repository) {
+        this.repository = repository;
+    }
+
+    public Result importFrom(InputStream input, long totalBytes, ProgressListener listener) throws IOException {
+        this.counter = new CountingInputStream(input);
+        this.totalBytes = totalBytes;
+        this.progressListener = listener;
+        imported = 0;
+        skipped = 0;
+        chunk.clear();
+
+        BufferedInputStream in = new BufferedInputStream(counter);
+        GeofenceFormat format = GeofenceFormat.sniff(peekFirstChar(in));
+        Log.i(TAG, "Importing " + format);
+        switch (format) {
+            case GEOJSON:
+                readGeoJson(in);
+                break;
+            case GPX:
+                readGpx(in);
+                break;
+            default:
+                readCsv(in);
+                break;
+        }
+        flush();
+        return new Result(imported, skipped);
+    }
+
+    private void add(String name, double lat, double lng, float radius) {
+        if (Double.isNaN(lat) || Double.isNaN(lng) || lat < -90 || lat > 90 || lng < -180 || lng > 180
+                || !(radius > 0)) {
+            skipped++;
+            return;
+        }
+        chunk.add(new LocationItem(0, name != null && !name.isEmpty() ? name : "Imported Location", lat, lng,
+                radius));
+        if (chunk.size() >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    // vertices are lat, lng pairs
+    private void addPolygon(String name, double[] vertices) {
+        if (vertices.length < 6) {
+            skipped++;
+            return;
+        }
+        for (int i = 0; i < vertices.length; i += 2) {
+            if (Double.isNaN(vertices[i]) || Double.isNaN(vertices[i + 1]) || vertices[i] < -90 || vertices[i] > 90
+                    || vertices[i + 1] < -180 || vertices[i + 1] > 180) {
+                skipped++;
+                return;
+            }
+        }
+        chunk.add(LocationItem.fromPolygon(0, name != null && !name.isEmpty() ? name : "Imported Location",
+                vertices));
+        if (chunk.size() >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (!chunk.isEmpty()) {
+            imported += repository.insertChunk(chunk);
+            chunk.clear();
+        }
+        if (progressListener != null) {
+            progressListener.onProgress(imported, counter.count, totalBytes);
+        }
+    }
+
+    // CSV: name,latitude,longitude[,radius] with an optional header row
+
+    private void readCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int nameCol = 0;
+        int latCol = 1;
+        int lngCol = 2;
+        int radiusCol = 3;
+        List<String> fields = new ArrayList<>();
+        String line;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            if (first && line.startsWith("\uFEFF")) {
+                // Excel starts its UTF-8 exports with a byte order mark, which would stick to the first header
+                line = line.substring(1);
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            splitCsvLine(line, fields);
+            if (first) {
+                first = false;
+                if (fields.size() > 1 && Double.isNaN(parseDouble(fields.get(1)))) {
+                    // Header row: map columns by name
+                    nameCol = latCol = lngCol = radiusCol = -1;
+                    for (int i = 0; i < fields.size(); i++) {
+                        String header = fields.get(i).trim().toLowerCase(Locale.ROOT);
+                        if (header.equals("name")) {
+                            nameCol = i;
+                        } else if (header.equals("lat") || header.equals("latitude")) {
+                            latCol = i;
+                        } else if (header.equals("lng") || header.equals("lon") || header.equals("longitude")) {
+                            lngCol = i;
+                        } else if (header.startsWith("radius")) {
+                            radiusCol = i;
+                        }
+                    }
+                    continue;
+                }
+            }
+            String name = field(fields, nameCol);
+            double lat = parseDouble(field(fields, latCol));
+            double lng = parseDouble(field(fields, lngCol));
+            String radius = field(fields, radiusCol);
+            add(name, lat, lng, radius != null ? (float) parseDouble(radius) : DEFAULT_RADIUS_METERS);
+        }
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    // Handles quoted fields with "" escapes; fields may not span lines
+    static void splitCsvLine(String line, List<String> out) {
+        out.clear();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+    }
+
+    // GeoJSON: FeatureCollection of Point features (properties.name / properties.radius) and Polygon
+    // features (outer ring only; holes are dropped)
+
+    private void readGeoJson(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("features")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readFeature(reader);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readFeature(JsonReader reader) throws IOException {
+        String name = null;
+        float radius = DEFAULT_RADIUS_METERS;
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+        double[] ring = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                String type = null;
+                double[] coords = null;
+                double[] rings = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String geometryKey = reader.nextName();
+                    if (geometryKey.equals("type")) {
+                        type = reader.nextString();
+                    } else if (geometryKey.equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        // "type" may come after "coordinates", so tell the shapes apart by nesting
+                        reader.beginArray();
+                        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            rings = readOuterRing(reader);
+                        } else {
+                            coords = readPosition(reader);
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if ("Point".equals(type) && coords != null) {
+                    // GeoJSON positions are [longitude, latitude]
+                    lng = coords[0];
+                    lat = coords[1];
+                } else if ("Polygon".equals(type) && rings != null) {
+                    ring = rings;
+                }
+            } else if (key.equals("properties") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String property = reader.nextName();
+                    if (property.equals("name") && reader.peek() == JsonToken.STRING) {
+                        name = reader.nextString();
+                    } else if ((property.equals("radius") || property.equals("radius_meters"))
+                            && reader.peek() == JsonToken.NUMBER) {
+                        radius = (float) reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (ring != null) {
+            addPolygon(name, ring);
+        } else {
+            add(name, lat, lng, radius);
+        }
+    }
+
+    // Reader is inside a Polygon's coordinates array. Returns the first ring as lat, lng pairs without
+    // the closing point and skips the rest.
+    private static double[] readOuterRing(JsonReader reader) throws IOException {
+        double[] vertices = new double[16];
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            double[] position = null;
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                position = readPosition(reader);
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+            if (position == null) {
+                continue;
+            }
+            if (n == vertices.length) {
+                vertices = Arrays.copyOf(vertices, n * 2);
+            }
+            vertices[n++] = position[1];
+            vertices[n++] = position[0];
+        }
+        reader.endArray();
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        if (n >= 4 && vertices[0] == vertices[n - 2] && vertices[1] == vertices[n - 1]) {
+            n -= 2;
+        }
+        return Arrays.copyOf(vertices, n);
+    }
+
+    // Reader is inside a position array; leaves it open
+    private static double[] readPosition(JsonReader reader) throws IOException {
+        double[] coords = new double[2];
+        int i = 0;
+        while (reader.hasNext()) {
+            if (i < 2 && reader.peek() == JsonToken.NUMBER) {
+                coords[i++] = reader.nextDouble();
+            } else {
+                // Altitude, or nested arrays from a non-Point geometry
+                reader.skipValue();
+                i = Math.max(i, 2);
+            }
+        }
+        return i >= 2 ? coords : null;
+    }
+
+    // GPX: <wpt lat lon><name/><extensions><radius/></extensions></wpt>
+
+    private void readGpx(InputStream in) throws IOException {
+        try {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(in, null);
+
+            String name = null;
+            float radius = DEFAULT_RADIUS_METERS;
+            double lat = Double.NaN;
+            double lng = Double.NaN;
+            boolean inWaypoint = false;
+            String currentTag = null;
+
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG) {
+                    currentTag = localName(parser.getName());
+                    if (currentTag.equals("wpt")) {
+                        inWaypoint = true;
+                        name = null;
+                        radius = DEFAULT_RADIUS_METERS;
+                        lat = parseDouble(parser.getAttributeValue(null, "lat"));
+                        lng = parseDouble(parser.getAttributeValue(null, "lon"));
+                    }
+                } else if (event == XmlPullParser.TEXT && inWaypoint && currentTag != null) {
+                    if (currentTag.equals("name")) {
+                        name = parser.getText().trim();
+                    } else if (currentTag.equals("radius")) {
+                        radius = (float) parseDouble(parser.getText().trim());
+                    }
+                } else if (event == XmlPullParser.END_TAG) {
+                    currentTag = null;
+                    if (localName(parser.getName()).equals("wpt")) {
+                        inWaypoint = false;
+                        add(name, lat, lng, radius);
+                    }
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid GPX: " + e.getMessage(), e);
+        }
+    }
+
+    private static String localName(String tag) {
+        int colon = tag.indexOf(':');
+        return colon >= 0 ? tag.substring(colon + 1) : tag;
+    }
+
+    private static double parseDouble(String s) {
+        if (s == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int peekFirstChar(BufferedInputStream in) throws IOException {
+        in.mark(64);
+        try {
+            int c = -1;
+            for (int i = 0; i < 63; i++) {
+                c = in.read();
+                // Skip a UTF-8 byte order mark along with whitespace
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != 0xEF && c != 0xBB && c != 0xBF) {
+                    break;
+                }
+            }
+            return c;
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.wristbandapp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Uniform lat/lng grid. Each fence is registered in every cell its bounding box touches,
+// so a fix only has to look at the single cell it falls into.
+// Cells live in an open-addressing table keyed by a primitive long so lookups don't box.
+public class GeofenceIndex {
+    static final double CELL_DEGREES = 0.01; // ~1.1 km of latitude
+    // Fences spanning more cells than this (e.g. a 20 km "city" fence) are checked on every fix instead
+    private static final int MAX_CELLS_PER_FENCE = 64;
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private final FenceTable table;
+    private final Map<Integer, Integer> slotById;
+
+    private long[] cellKeys;
+    private int[][] cellSlots;
+    private int[] cellCounts;
+    private int usedCells;
+
+    private int[] oversized;
+    private int oversizedCount;
+
+    public GeofenceIndex() {
+        table = new FenceTable(16);
+        slotById = new HashMap<>();
+        cellKeys = new long[64];
+        Arrays.fill(cellKeys, EMPTY_KEY);
+        cellSlots = new int[64][];
+        cellCounts = new int[64];
+        oversized = new int[4];
+    }
+
+    public GeofenceIndex(GeofenceIndex other) {
+        table = new FenceTable(other.table);
+        slotById = new HashMap<>(other.slotById);
+        cellKeys = other.cellKeys.clone();
+        cellSlots = new int[other.cellSlots.length][];
+        for (int i = 0; i < cellSlots.length; i++) {
+            if (other.cellSlots[i] != null) {
+                cellSlots[i] = other.cellSlots[i].clone();
+            }
+        }
+        cellCounts = other.cellCounts.clone();
+        usedCells = other.usedCells;
+        oversized = other.oversized.clone();
+        oversizedCount = other.oversizedCount;
+    }
+
+    public void add(LocationItem item) {
+        remove(item.id);
+        int slot = table.add(item);
+        slotById.put(item.id, slot);
+
+        int minLatCell = latCell(item.latitude - latSpan(item));
+        int maxLatCell = latCell(item.latitude + latSpan(item));
+        int minLngCell = lngCell(item.longitude - lngSpan(item));
+        int maxLngCell = lngCell(item.longitude + lngSpan(item));
+        if ((long) (maxLatCell - minLatCell + 1) * (maxLngCell - minLngCell + 1) > MAX_CELLS_PER_FENCE) {
+            if (oversizedCount == oversized.length) {
+                oversized = Arrays.copyOf(oversized, oversizedCount * 2);
+            }
+            oversized[oversizedCount++] = slot;
+            return;
+        }
+
+        for (int y = minLatCell; y <= maxLatCell; y++) {
+            for (int x = minLngCell; x <= maxLngCell; x++) {
+                addToCell(key(y, x), slot);
+            }
+        }
+    }
+
+    public boolean remove(int id) {
+        Integer boxedSlot = slotById.remove(id);
+        if (boxedSlot == null) {
+            return false;
+        }
+        int slot = boxedSlot;
+        LocationItem item = table.item(slot);
+        table.remove(slot);
+
+        for (int i = 0; i < oversizedCount; i++) {
+            if (oversized[i] == slot) {
+                oversized[i] = oversized[--oversizedCount];
+                return true;
+            }
+        }
+
+        int minLatCell = latCell(item.latitude - latSpan(item));
+        int maxLatCell = latCell(item.latitude + latSpan(item));
+        int minLngCell = lngCell(item.longitude - lngSpan(item));
+        int maxLngCell = lngCell(item.longitude + lngSpan(item));
+        for (int y = minLatCell; y <= maxLatCell; y++) {
+            for (int x = minLngCell; x <= maxLngCell; x++) {
+                removeFromCell(key(y, x), slot);
+            }
+        }
+        return true;
+    }
+
+    // Writes the slots of fences containing the point into out and returns how many were found
+    // (at most out.length). Does not allocate.
+    public int queryContaining(double lat, double lng, int[] out) {
+        return queryContaining(lat, lng, 0f, out);
+    }
+
+    // Same as above with every radius grown by marginMeters, e.g. a fix's accuracy radius
+    // when deciding whether the user may still be inside.
+    public int queryContaining(double lat, double lng, float marginMeters, int[] out) {
+        int found = 0;
+        if (marginMeters <= 0) {
+            found = scanCell(findCell(key(latCell(lat), lngCell(lng))), lat, lng, 0f, out, found, false);
+        } else {
+            // The grown circle can reach past the fence's own cells, so look at every cell the margin touches
+            double latMargin = marginMeters / FenceTable.METERS_PER_DEGREE;
+            double lngMargin = marginMeters
+                    / (FenceTable.METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+            int maxLatCell = latCell(lat + latMargin);
+            int maxLngCell = lngCell(lng + lngMargin);
+            for (int y = latCell(lat - latMargin); y <= maxLatCell; y++) {
+                for (int x = lngCell(lng - lngMargin); x <= maxLngCell; x++) {
+                    found = scanCell(findCell(key(y, x)), lat, lng, marginMeters, out, found, true);
+                }
+            }
+        }
+        for (int i = 0; i < oversizedCount && found < out.length; i++) {
+            if (table.contains(oversized[i], lat, lng, marginMeters)) {
+                out[found++] = oversized[i];
+            }
+        }
+        return found;
+    }
+
+    private int scanCell(int cell, double lat, double lng, float marginMeters, int[] out, int found,
+            boolean dedupe) {
+        if (cell < 0) {
+            return found;
+        }
+        int[] slots = cellSlots[cell];
+        int count = cellCounts[cell];
+        for (int i = 0; i < count && found < out.length; i++) {
+            int slot = slots[i];
+            if (dedupe && indexOf(out, found, slot) >= 0) {
+                continue;
+            }
+            if (table.contains(slot, lat, lng, marginMeters)) {
+                out[found++] = slot;
+            }
+        }
+        return found;
+    }
+
+    // Fences within reachMeters that the ray from the point along the velocity enters, soonest first:
+    // writes up to out.length slots and their seconds to entry (0 when already inside) and returns the
+    // count. Unlike queryContaining this keeps the soonest ones rather than the first found, so a
+    // crowded area behind the user can't push the fence ahead out. Does not allocate.
+    public int queryArrivals(double lat, double lng, float reachMeters, double velocityEast, double velocityNorth,
+            int[] out, double[] outSeconds) {
+        int found = 0;
+        double latMargin = reachMeters / FenceTable.METERS_PER_DEGREE;
+        double lngMargin = reachMeters
+                / (FenceTable.METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+        int maxLatCell = latCell(lat + latMargin);
+        int maxLngCell = lngCell(lng + lngMargin);
+        for (int y = latCell(lat - latMargin); y <= maxLatCell; y++) {
+            for (int x = lngCell(lng - lngMargin); x <= maxLngCell; x++) {
+                int cell = findCell(key(y, x));
+                if (cell < 0) {
+                    continue;
+                }
+                int[] slots = cellSlots[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    found = offerArrival(slots[i], lat, lng, reachMeters, velocityEast, velocityNorth, out,
+                            outSeconds, found);
+                }
+            }
+        }
+        for (int i = 0; i < oversizedCount; i++) {
+            found = offerArrival(oversized[i], lat, lng, reachMeters, velocityEast, velocityNorth, out,
+                    outSeconds, found);
+        }
+        return found;
+    }
+
+    // Insertion into the sorted arrays, dropping the latest arrival once full. A fence registered in
+    // several cells comes by again; if it was dropped, everything kept is sooner and it is dropped again.
+    private int offerArrival(int slot, double lat, double lng, float reachMeters, double velocityEast,
+            double velocityNorth, int[] out, double[] outSeconds, int found) {
+        if (indexOf(out, found, slot) >= 0 || !table.contains(slot, lat, lng, reachMeters)) {
+            return found;
+        }
+        double seconds = table.secondsToEntry(slot, lat, lng, velocityEast, velocityNorth);
+        if (seconds == Double.POSITIVE_INFINITY || (found == out.length && seconds >= outSeconds[found - 1])) {
+            return found;
+        }
+        int i = found < out.length ? found++ : found - 1;
+        while (i > 0 && outSeconds[i - 1] > seconds) {
+            out[i] = out[i - 1];
+            outSeconds[i] = outSeconds[i - 1];
+            i--;
+        }
+        out[i] = slot;
+        outSeconds[i] = seconds;
+        return found;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Distance to the closest fence boundary, searching outward ring by ring and giving up at maxMeters.
+    // Returns maxMeters when nothing is closer.
+    public double nearestEdgeDistance(double lat, double lng, double maxMeters) {
+        double best = maxMeters;
+        for (int i = 0; i < oversizedCount; i++) {
+            best = Math.min(best, table.approxEdgeDistance(oversized[i], lat, lng));
+        }
+
+        double cos = Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        double cellMeters = CELL_DEGREES * FenceTable.METERS_PER_DEGREE * cos;
+        int maxRing = (int) Math.ceil(maxMeters / cellMeters);
+        int centerLat = latCell(lat);
+        int centerLng = lngCell(lng);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Anything in this ring or beyond is at least (ring - 1) cells away
+            if (best <= (ring - 1) * cellMeters) {
+                break;
+            }
+            for (int y = centerLat - ring; y <= centerLat + ring; y++) {
+                boolean edgeRow = y == centerLat - ring || y == centerLat + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int x = centerLng - ring; x <= centerLng + ring; x += Math.max(step, 1)) {
+                    int cell = findCell(key(y, x));
+                    if (cell < 0) {
+                        continue;
+                    }
+                    int[] slots = cellSlots[cell];
+                    for (int i = 0; i < cellCounts[cell]; i++) {
+                        best = Math.min(best, table.approxEdgeDistance(slots[i], lat, lng));
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    public LocationItem item(int slot) {
+        return table.item(slot);
+    }
+
+    public boolean contains(int slot, double lat, double lng, float marginMeters) {
+        return table.contains(slot, lat, lng, marginMeters);
+    }
+
+    public double secondsToEntry(int slot, double lat, double lng, double velocityEast, double velocityNorth) {
+        return table.secondsToEntry(slot, lat, lng, velocityEast, velocityNorth);
+    }
+
+    public boolean hasFence(int id) {
+        return slotById.containsKey(id);
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    private int findCell(long key) {
+        int mask = cellKeys.length - 1;
+        int i = mix(key) & mask;
+        while (cellKeys[i] != EMPTY_KEY) {
+            if (cellKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void addToCell(long key, int slot) {
+        int mask = cellKeys.length - 1;
+        int i = mix(key) & mask;
+        while (cellKeys[i] != EMPTY_KEY && cellKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (cellKeys[i] == EMPTY_KEY) {
+            cellKeys[i] = key;
+            cellSlots[i] = new int[2];
+            usedCells++;
+        }
+        if (cellCounts[i] == cellSlots[i].length) {
+            cellSlots[i] = Arrays.copyOf(cellSlots[i], cellCounts[i] * 2);
+        }
+        cellSlots[i][cellCounts[i]++] = slot;
+
+        if (usedCells * 2 > cellKeys.length) {
+            rehash();
+        }
+    }
+
+    private void removeFromCell(long key, int slot) {
+        int cell = findCell(key);
+        if (cell < 0) {
+            return;
+        }
+        int[] slots = cellSlots[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+            if (slots[i] == slot) {
+                slots[i] = slots[--cellCounts[cell]];
+                break;
+            }
+        }
+        // Empty cells stay in place to keep probe chains intact; rehash() drops them
+    }
+
+    private void rehash() {
+        long[] oldKeys = cellKeys;
+        int[][] oldSlots = cellSlots;
+        int[] oldCounts = cellCounts;
+
+        int live = 0;
+        for (int count : oldCounts) {
+            if (count > 0) {
+                live++;
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(live * 4, 64) - 1) << 1;
+        cellKeys = new long[capacity];
+        Arrays.fill(cellKeys, EMPTY_KEY);
+        cellSlots = new int[capacity][];
+        cellCounts = new int[capacity];
+        usedCells = live;
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY_KEY || oldCounts[j] == 0) {
+                continue;
+            }
+            int i = mix(oldKeys[j]) & mask;
+            while (cellKeys[i] != EMPTY_KEY) {
+                i = (i + 1) & mask;
+            }
+            cellKeys[i] = oldKeys[j];
+            cellSlots[i] = oldSlots[j];
+            cellCounts[i] = oldCounts[j];
+        }
+    }
+
+    private static double latSpan(LocationItem item) {
+        return FenceTable.latSpanDegrees(item.radiusMeters);
+    }
+
+    private static double lngSpan(LocationItem item) {
+        return FenceTable.lngSpanDegrees(item.latitude, item.radiusMeters);
+    }
+
+    static int latCell(double lat) {
+        return (int) Math.floor(lat / CELL_DEGREES);
+    }
+
+    static int lngCell(double lng) {
+        return (int) Math.floor(lng / CELL_DEGREES);
+    }
+
+    private static long key(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xffffffffL);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.wristbandapp;
+
+import java.util.Arrays;
+
+// The fix -> LED decision, with no Android dependencies so the simulator module can replay recorded
+// tracks through exactly the code the service runs. LocationService feeds it fixes and turns its
+// callbacks into BLE commands, journal records and location request changes.
+//
+// Each fence the user is near has its own state: ENTERING while the fix is inside the fence but the
+// enter dwell hasn't passed, INSIDE once it has. An INSIDE fence is only left after the fix has been
+// outside radius + hysteresis for the whole exit dwell, so a fix jittering around the edge can't
+// toggle the LED. With a lead time set, a fence the user is heading straight for becomes PREDICTED
+// once ArrivalPredictor puts it within the lead time, and turns into INSIDE on arrival. The LED is on
+// while any INSIDE or PREDICTED fence hasn't been silenced by the user.
+public class GeofenceMonitor {
+    public interface Listener {
+        // A fence's enter dwell completed; fired for every fence, whether or not it changes the LED
+        void onEnter(LocationItem fence, double lat, double lng, float accuracy);
+
+        // At the current speed and heading the fence will be reached within the lead time
+        void onPredictedArrival(LocationItem fence, float secondsToEntry, double lat, double lng, float speedMps);
+
+        // The fence was left for the whole exit dwell, or deleted while we were inside it. Also fired
+        // for a PREDICTED fence once the prediction no longer holds.
+        void onExit(int fenceId, double lat, double lng, float accuracy);
+
+        // fenceId is the fence now holding the LED on, or the last one left when it goes off
+        void onLedChanged(boolean on, int fenceId);
+
+        // The location request should be re-registered with the scheduler's new interval and distance
+        void onScheduleChanged();
+    }
+
+    static final long DEFAULT_ENTER_DWELL_MS = 0;
+    static final long DEFAULT_EXIT_DWELL_MS = 15000;
+    static final float DEFAULT_EXIT_HYSTERESIS_METERS = 20f;
+
+    // Below this the fitted heading is mostly GPS noise
+    private static final float MIN_PREDICTION_SPEED_MPS = 2f;
+    // Fences further ahead than lead time + this don't affect the sleep hint: the scheduler never
+    // sleeps longer than two minutes anyway
+    private static final long PREDICTION_HORIZON_MS = 240000;
+    // A PREDICTED fence is kept while its arrival stays within this multiple of the lead time
+    private static final double PREDICTION_HYSTERESIS = 2.0;
+    // Fraction of the time left before an alert is due that the scheduler may sleep
+    private static final double SLEEP_FRACTION = 0.5;
+
+    private static final int STATE_ENTERING = 1;
+    private static final int STATE_INSIDE = 2;
+    private static final int STATE_PREDICTED = 3;
+
+    private final Listener listener;
+    private final FixFilter fixFilter = new FixFilter();
+    private final LocationScheduler scheduler = new LocationScheduler();
+    private final ArrivalPredictor predictor = new ArrivalPredictor();
+    // Reused on every fix so the evaluation path doesn't allocate. containingSlots grows when a query
+    // fills it: a fence missing from the result would look left and start its exit dwell.
+    private int[] containingSlots = new int[16];
+    private final int[] candidateSlots = new int[64];
+    private final double[] candidateSeconds = new double[64];
+
+    // A late alarm costs more than an early one, so entering is immediate unless configured otherwise
+    private long enterDwellMs = DEFAULT_ENTER_DWELL_MS;
+    private long exitDwellMs = DEFAULT_EXIT_DWELL_MS;
+    private float exitHysteresisMeters = DEFAULT_EXIT_HYSTERESIS_METERS;
+    // 0 disables predictive alerts; arrival prediction still shortens the scheduler's sleep
+    private long leadTimeMs = 0;
+    // Set by evaluate for the scheduler update that follows it
+    private long sleepHintMs = Long.MAX_VALUE;
+
+    // Fences not in OUTSIDE state, unordered. Rarely more than a couple, so lookups are linear scans.
+    private int[] trackedIds = new int[4];
+    private int[] trackedStates = new int[4];
+    // ENTERING: fix time the fence was first entered. INSIDE and PREDICTED: fix time the exit dwell
+    // started, -1 if not.
+    private long[] trackedSinceMs = new long[4];
+    private boolean[] trackedSilenced = new boolean[4];
+    // Evaluation that last found the fence within its exit radius
+    private int[] trackedSeen = new int[4];
+    private int trackedCount;
+    private int evaluation;
+
+    private boolean ledOn = false;
+    private int activeFenceId = -1;
+
+    public GeofenceMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setDwell(long enterDwellMs, long exitDwellMs) {
+        this.enterDwellMs = enterDwellMs;
+        this.exitDwellMs = exitDwellMs;
+    }
+
+    public void setExitHysteresisMeters(float meters) {
+        exitHysteresisMeters = meters;
+    }
+
+    // How long before the predicted arrival the alert should fire; 0 to only alert on arrival
+    public void setLeadTimeMs(long leadTimeMs) {
+        this.leadTimeMs = Math.max(0, leadTimeMs);
+    }
+
+    public LocationScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public boolean isLedOn() {
+        return ledOn;
+    }
+
+    // -1 while the LED is off
+    public int getActiveFenceId() {
+        return activeFenceId;
+    }
+
+    public double getLatitude() {
+        return fixFilter.getLatitude();
+    }
+
+    public double getLongitude() {
+        return fixFilter.getLongitude();
+    }
+
+    // fixTimeMs and nowMs come from the same monotonic clock. speedMps is NaN when the provider
+    // has no speed. Returns false when FixFilter dropped the fix and nothing was evaluated.
+    public boolean onFix(GeofenceSnapshot snapshot, long fixTimeMs, long nowMs, double lat, double lng,
+            float accuracy, float speedMps) {
+        if (!fixFilter.offer(fixTimeMs, nowMs, lat, lng, accuracy)) {
+            return false;
+        }
+        predictor.add(fixFilter.getTimeMs(), fixFilter.getLatitude(), fixFilter.getLongitude());
+        if (!snapshot.isLoaded()) {
+            // Without fences every tracked one would look deleted and be exited, including those
+            // restored after a restart; wait for the load, sampling at the current rate meanwhile
+            return true;
+        }
+        evaluate(snapshot, fixTimeMs, fixFilter.getLatitude(), fixFilter.getLongitude(), fixFilter.getAccuracy());
+
+        double edgeDistance = snapshot.nearestEdgeDistance(lat, lng, LocationScheduler.FAR_DISTANCE_METERS);
+        if (scheduler.update(edgeDistance, Float.isNaN(speedMps) ? predictor.getSpeed() : speedMps, sleepHintMs)) {
+            listener.onScheduleChanged();
+        }
+        return true;
+    }
+
+    // The user silenced the alert. Only the fences alerting now (inside or predicted) are silenced,
+    // each until it is left, so arriving at a different fence alerts again.
+    public void manualOff() {
+        for (int t = 0; t < trackedCount; t++) {
+            if (trackedStates[t] != STATE_ENTERING) {
+                trackedSilenced[t] = true;
+            }
+        }
+        ledOn = false;
+        activeFenceId = -1;
+    }
+
+    // New fences may be right next to us; sample fast until the next fix says otherwise
+    public void onFencesAdded() {
+        if (scheduler.reset()) {
+            listener.onScheduleChanged();
+        }
+    }
+
+    // INSIDE fences as "id" or "id:s" (silenced), comma separated. ENTERING fences and pending exit
+    // dwells are timed on a clock that doesn't survive a reboot, so they are left out.
+    public String saveState() {
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < trackedCount; t++) {
+            if (trackedStates[t] != STATE_INSIDE) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(trackedIds[t]);
+            if (trackedSilenced[t]) {
+                sb.append(":s");
+            }
+        }
+        return sb.toString();
+    }
+
+    // Restores what saveState wrote, so a restarted service neither re-alerts for a fence the user is
+    // already in nor forgets to switch the LED off when they leave it. Call before the first fix.
+    public void restoreState(String state) {
+        trackedCount = 0;
+        if (state != null && !state.isEmpty()) {
+            for (String entry : state.split(",")) {
+                boolean silenced = entry.endsWith(":s");
+                try {
+                    int id = Integer.parseInt(silenced ? entry.substring(0, entry.length() - 2) : entry);
+                    int t = track(id, STATE_INSIDE, -1);
+                    trackedSilenced[t] = silenced;
+                    trackedSeen[t] = evaluation;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        activeFenceId = firstAudibleFence();
+        ledOn = activeFenceId != -1;
+    }
+
+    private void evaluate(GeofenceSnapshot snapshot, long timeMs, double lat, double lng, float accuracy) {
+        evaluation++;
+        // The exit radius: a fence is only left once the whole accuracy circle, and at least the
+        // hysteresis band, is outside it
+        float exitMargin = Math.max(accuracy, exitHysteresisMeters);
+        int found;
+        while ((found = snapshot.queryContaining(lat, lng, exitMargin, containingSlots)) == containingSlots.length) {
+            containingSlots = new int[containingSlots.length * 2];
+        }
+        int lastExited = -1;
+
+        for (int i = 0; i < found; i++) {
+            int slot = containingSlots[i];
+            LocationItem fence = snapshot.item(slot);
+            // Entering uses the fence's own radius, with the fix itself inside
+            boolean insideEnter = snapshot.contains(slot, lat, lng, 0f);
+            int t = indexOf(fence.id);
+            if (t < 0) {
+                if (!insideEnter) {
+                    continue;
+                }
+                t = track(fence.id, STATE_ENTERING, timeMs);
+            }
+            trackedSeen[t] = evaluation;
+            if (trackedStates[t] == STATE_INSIDE) {
+                trackedSinceMs[t] = -1;
+            } else if (trackedStates[t] == STATE_PREDICTED) {
+                // Arrived where we said we would; the LED is already on
+                trackedSinceMs[t] = -1;
+                if (insideEnter) {
+                    trackedStates[t] = STATE_INSIDE;
+                    listener.onEnter(fence, lat, lng, accuracy);
+                }
+            } else if (!insideEnter) {
+                untrack(t);
+            } else if (timeMs - trackedSinceMs[t] >= enterDwellMs) {
+                trackedStates[t] = STATE_INSIDE;
+                trackedSinceMs[t] = -1;
+                listener.onEnter(fence, lat, lng, accuracy);
+            }
+        }
+
+        predictArrivals(snapshot, lat, lng);
+
+        // Backwards because untrack moves the last entry into the freed one
+        for (int t = trackedCount - 1; t >= 0; t--) {
+            if (trackedSeen[t] == evaluation) {
+                continue;
+            }
+            if (trackedStates[t] == STATE_ENTERING) {
+                untrack(t);
+                continue;
+            }
+            int id = trackedIds[t];
+            if (trackedSinceMs[t] < 0) {
+                trackedSinceMs[t] = timeMs;
+            }
+            if (timeMs - trackedSinceMs[t] >= exitDwellMs || !snapshot.hasFence(id)) {
+                untrack(t);
+                lastExited = id;
+                listener.onExit(id, lat, lng, accuracy);
+            }
+        }
+
+        int audible = firstAudibleFence();
+        if (audible != -1) {
+            activeFenceId = audible;
+            if (!ledOn) {
+                ledOn = true;
+                listener.onLedChanged(true, audible);
+            }
+        } else {
+            activeFenceId = -1;
+            if (ledOn) {
+                ledOn = false;
+                listener.onLedChanged(false, lastExited);
+            }
+        }
+    }
+
+    // Tracks fences the user will reach within the lead time and works out how long the scheduler
+    // may sleep before the next of them is due
+    private void predictArrivals(GeofenceSnapshot snapshot, double lat, double lng) {
+        sleepHintMs = Long.MAX_VALUE;
+        float speed = predictor.getSpeed();
+        if (speed < MIN_PREDICTION_SPEED_MPS) {
+            return;
+        }
+        double vEast = predictor.getVelocityEast();
+        double vNorth = predictor.getVelocityNorth();
+        // Every fence that could be reached within the horizon has its edge this close
+        float reach = (float) Math.min(speed * (leadTimeMs + PREDICTION_HORIZON_MS) / 1000.0,
+                LocationScheduler.FAR_DISTANCE_METERS);
+        // Only fences on our heading, soonest first, so the one ahead is never crowded out
+        int found = snapshot.queryArrivals(lat, lng, reach, vEast, vNorth, candidateSlots, candidateSeconds);
+        for (int i = 0; i < found; i++) {
+            int slot = candidateSlots[i];
+            double secondsToEntry = candidateSeconds[i];
+            double msUntilDue = secondsToEntry * 1000 - leadTimeMs;
+            sleepHintMs = Math.min(sleepHintMs, (long) Math.max(0, msUntilDue * SLEEP_FRACTION));
+            if (leadTimeMs == 0 || secondsToEntry == 0) {
+                continue;
+            }
+
+            LocationItem fence = snapshot.item(slot);
+            int t = indexOf(fence.id);
+            if (t < 0 && msUntilDue <= 0) {
+                t = track(fence.id, STATE_PREDICTED, -1);
+                trackedSeen[t] = evaluation;
+                listener.onPredictedArrival(fence, (float) secondsToEntry, lat, lng, speed);
+            } else if (t >= 0 && trackedStates[t] == STATE_PREDICTED
+                    && secondsToEntry * 1000 <= leadTimeMs * PREDICTION_HYSTERESIS) {
+                trackedSeen[t] = evaluation;
+                trackedSinceMs[t] = -1;
+            }
+        }
+    }
+
+    private int firstAudibleFence() {
+        for (int t = 0; t < trackedCount; t++) {
+            if (trackedStates[t] != STATE_ENTERING && !trackedSilenced[t]) {
+                return trackedIds[t];
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(int id) {
+        for (int t = 0; t < trackedCount; t++) {
+            if (trackedIds[t] == id) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private int track(int id, int state, long sinceMs) {
+        if (trackedCount == trackedIds.length) {
+            int capacity = trackedCount * 2;
+            trackedIds = Arrays.copyOf(trackedIds, capacity);
+            trackedStates = Arrays.copyOf(trackedStates, capacity);
+            trackedSinceMs = Arrays.copyOf(trackedSinceMs, capacity);
+            trackedSilenced = Arrays.copyOf(trackedSilenced, capacity);
+            trackedSeen = Arrays.copyOf(trackedSeen, capacity);
+        }
+        int t = trackedCount++;
+        trackedIds[t] = id;
+        trackedStates[t] = state;
+        trackedSinceMs[t] = sinceMs;
+        trackedSilenced[t] = false;
+        trackedSeen[t] = 0;
+        return t;
+    }
+
+    private void untrack(int t) {
+        int last = --trackedCount;
+        trackedIds[t] = trackedIds[last];
+        trackedStates[t] = trackedStates[last];
+        trackedSinceMs[t] = trackedSinceMs[last];
+        trackedSilenced[t] = trackedSilenced[last];
+        trackedSeen[t] = trackedSeen[last];
+    }
+}
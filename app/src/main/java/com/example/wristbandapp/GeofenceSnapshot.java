@@ -0,0 +1,94 @@
+package com.example.wristbandapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable view of the saved locations, rebuilt only when DatabaseHelper reports a change
+public final class GeofenceSnapshot {
+    public static final GeofenceSnapshot EMPTY = new GeofenceSnapshot(-1, Collections.emptyList());
+
+    public final int version;
+    public final List<LocationItem> locations;
+    // Never mutated once the snapshot is published; updates go through a copy
+    private final GeofenceIndex index;
+
+    public GeofenceSnapshot(int version, List<LocationItem> locations) {
+        this.version = version;
+        this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        this.index = new GeofenceIndex();
+        for (LocationItem item : locations) {
+            index.add(item);
+        }
+    }
+
+    private GeofenceSnapshot(int version, List<LocationItem> locations, GeofenceIndex index) {
+        this.version = version;
+        this.locations = Collections.unmodifiableList(locations);
+        this.index = index;
+    }
+
+    // False for EMPTY, the placeholder used until the first load from the database arrives
+    public boolean isLoaded() {
+        return version >= 0;
+    }
+
+    public boolean isEmpty() {
+        return locations.isEmpty();
+    }
+
+    public int queryContaining(double lat, double lng, float marginMeters, int[] out) {
+        return index.queryContaining(lat, lng, marginMeters, out);
+    }
+
+    public double nearestEdgeDistance(double lat, double lng, double maxMeters) {
+        return index.nearestEdgeDistance(lat, lng, maxMeters);
+    }
+
+    public LocationItem item(int slot) {
+        return index.item(slot);
+    }
+
+    // Containment test for a slot returned by queryContaining, e.g. against a smaller margin
+    public boolean contains(int slot, double lat, double lng, float marginMeters) {
+        return index.contains(slot, lat, lng, marginMeters);
+    }
+
+    public int queryArrivals(double lat, double lng, float reachMeters, double velocityEast, double velocityNorth,
+            int[] out, double[] outSeconds) {
+        return index.queryArrivals(lat, lng, reachMeters, velocityEast, velocityNorth, out, outSeconds);
+    }
+
+    public double secondsToEntry(int slot, double lat, double lng, double velocityEast, double velocityNorth) {
+        return index.secondsToEntry(slot, lat, lng, velocityEast, velocityNorth);
+    }
+
+    public boolean hasFence(int id) {
+        return index.hasFence(id);
+    }
+
+    public GeofenceSnapshot withLocation(int version, LocationItem item) {
+        List<LocationItem> newLocations = new ArrayList<>(locations.size() + 1);
+        for (LocationItem existing : locations) {
+            if (existing.id != item.id) {
+                newLocations.add(existing);
+            }
+        }
+        newLocations.add(item);
+        GeofenceIndex newIndex = new GeofenceIndex(index);
+        newIndex.add(item);
+        return new GeofenceSnapshot(version, newLocations, newIndex);
+    }
+
+    public GeofenceSnapshot withoutLocation(int version, int id) {
+        List<LocationItem> newLocations = new ArrayList<>(locations.size());
+        for (LocationItem existing : locations) {
+            if (existing.id != id) {
+                newLocations.add(existing);
+            }
+        }
+        GeofenceIndex newIndex = new GeofenceIndex(index);
+        newIndex.remove(id);
+        return new GeofenceSnapshot(version, newLocations, newIndex);
+    }
+}
@@ -6,25 +6,47 @@ import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.List;
 
-public class LocationAdapter extends RecyclerView.Adapter<LocationAdapter.ViewHolder> {
-    private List<LocationItem> locations;
-    private OnDeleteClickListener deleteClickListener;
+import java.util.Arrays;
+
+// Lists are diffed off the main thread by ListAdapter, so only rows that actually changed are rebound.
+// Submitted lists must not be modified afterwards; submit a new list instead.
+public class LocationAdapter extends ListAdapter<LocationItem, LocationAdapter.ViewHolder> {
+    private final OnDeleteClickListener deleteClickListener;
 
     public interface OnDeleteClickListener {
         void onDeleteClick(LocationItem item);
     }
 
-    public LocationAdapter(List<LocationItem> locations, OnDeleteClickListener listener) {
-        this.locations = locations;
+    private static final DiffUtil.ItemCallback<LocationItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<LocationItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull LocationItem oldItem, @NonNull LocationItem newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull LocationItem oldItem, @NonNull LocationItem newItem) {
+            return oldItem.latitude == newItem.latitude
+                    && oldItem.longitude == newItem.longitude
+                    && oldItem.radiusMeters == newItem.radiusMeters
+                    && oldItem.name.equals(newItem.name)
+                    && Arrays.equals(oldItem.polygon, newItem.polygon);
+        }
+    };
+
+    public LocationAdapter(OnDeleteClickListener listener) {
+        super(DIFF_CALLBACK);
         this.deleteClickListener = listener;
+        setHasStableIds(true);
     }
 
-    public void setLocations(List<LocationItem> locations) {
-        this.locations = locations;
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     @NonNull
@@ -32,25 +54,23 @@ public class LocationAdapter extends RecyclerView.Adapter<LocationAdapter.ViewHo
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_location, parent, false);
-        return new ViewHolder(view);
-    }
-
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        LocationItem item = locations.get(position);
-        holder.tvName.setText(item.name);
-        holder.tvCoords.setText(String.format("Lat: %.5f, Lng: %.5f", item.latitude, item.longitude));
-        holder.tvRadius.setText("Radius: " + item.radiusMeters + "m");
+        ViewHolder holder = new ViewHolder(view);
+        // One listener per holder rather than one per bind
         holder.btnDelete.setOnClickListener(v -> {
-            if (deleteClickListener != null) {
-                deleteClickListener.onDeleteClick(item);
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && deleteClickListener != null) {
+                deleteClickListener.onDeleteClick(getItem(position));
             }
         });
+        return holder;
     }
 
     @Override
-    public int getItemCount() {
-        return locations != null ? locations.size() : 0;
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        LocationItem item = getItem(position);
+        holder.tvName.setText(item.name);
+        holder.tvCoords.setText(item.getCoordsText());
+        holder.tvRadius.setText(item.getRadiusText());
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -6,6 +6,14 @@ public class LocationItem {
     public double latitude;
     public double longitude;
     public float radiusMeters;
+    // Vertices as lat, lng pairs for polygon fences, null for circles. For a polygon, latitude/longitude
+    // is the centre of its bounding box and radiusMeters the circle around it that covers every vertex,
+    // so code that only understands circles (bounding boxes, grid index, load window) still sees a safe bound.
+    public double[] polygon;
+
+    // Display strings for the list, formatted once on first bind
+    private String coordsText;
+    private String radiusText;
 
     public LocationItem(int id, String name, double latitude, double longitude, float radiusMeters) {
         this.id = id;
@@ -14,4 +22,51 @@ public class LocationItem {
         this.longitude = longitude;
         this.radiusMeters = radiusMeters;
     }
+
+    public LocationItem(int id, String name, double latitude, double longitude, float radiusMeters,
+            double[] polygon) {
+        this(id, name, latitude, longitude, radiusMeters);
+        this.polygon = polygon;
+    }
+
+    // vertices are lat, lng pairs; at least three points, ring not closed
+    public static LocationItem fromPolygon(int id, String name, double[] vertices) {
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE;
+        double maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < vertices.length; i += 2) {
+            minLat = Math.min(minLat, vertices[i]);
+            maxLat = Math.max(maxLat, vertices[i]);
+            minLng = Math.min(minLng, vertices[i + 1]);
+            maxLng = Math.max(maxLng, vertices[i + 1]);
+        }
+        double centreLat = (minLat + maxLat) / 2;
+        double centreLng = (minLng + maxLng) / 2;
+        double radius = 0;
+        for (int i = 0; i < vertices.length; i += 2) {
+            radius = Math.max(radius, FenceTable.haversineMeters(centreLat, centreLng, vertices[i], vertices[i + 1]));
+        }
+        // Round up so float precision can't put a vertex outside the bounding circle
+        return new LocationItem(id, name, centreLat, centreLng, (float) Math.ceil(radius + 1), vertices);
+    }
+
+    public boolean isPolygon() {
+        return polygon != null;
+    }
+
+    public String getCoordsText() {
+        if (coordsText == null) {
+            coordsText = String.format("Lat: %.5f, Lng: %.5f", latitude, longitude);
+        }
+        return coordsText;
+    }
+
+    public String getRadiusText() {
+        if (radiusText == null) {
+            radiusText = polygon != null ? "Area: " + polygon.length / 2 + " points"
+                    : "Radius: " + radiusMeters + "m";
+        }
+        return radiusText;
+    }
 }
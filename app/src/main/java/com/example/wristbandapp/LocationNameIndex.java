@@ -0,0 +1,235 @@
+package com.example.wristbandapp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+// Substring search over location names using a trigram index. Only ids and lowercased names are
+// kept, so a few thousand stops cost a few hundred KB. A query of three or more characters only
+// looks at the names that contain its rarest trigram; shorter queries scan the names directly.
+// Methods are synchronized: the repository updates it on its write thread and queries it from reads.
+public class LocationNameIndex {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_POSTINGS = 4;
+
+    private int[] slotIds = new int[INITIAL_CAPACITY];
+    // Lowercased name per slot; null once the location is removed
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int slotCount;
+    private int removedCount;
+    private final HashMap<Integer, Integer> slotById = new HashMap<>();
+
+    // Open-addressing table from packed trigram to the slots whose name contains it, in slot order
+    private long[] trigramKeys = new long[INITIAL_CAPACITY];
+    private int[][] postings = new int[INITIAL_CAPACITY][];
+    private int[] postingCounts = new int[INITIAL_CAPACITY];
+    private int trigramCount;
+    // Scores of the matches kept by the current search, parallel to its out array
+    private long[] topScores = new long[0];
+
+    public synchronized void add(int id, String name) {
+        remove(id);
+        if (slotCount == slotIds.length) {
+            slotIds = Arrays.copyOf(slotIds, slotCount * 2);
+            names = Arrays.copyOf(names, slotCount * 2);
+        }
+        int slot = slotCount++;
+        String normalized = normalize(name);
+        slotIds[slot] = id;
+        names[slot] = normalized;
+        slotById.put(id, slot);
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            addPosting(trigram(normalized, i), slot);
+        }
+    }
+
+    public synchronized void remove(int id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        // Postings still point at the slot; queries skip it until the next compaction
+        names[slot] = null;
+        removedCount++;
+        if (removedCount > INITIAL_CAPACITY && removedCount > slotCount / 2) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        return slotById.size();
+    }
+
+    // Writes the ids of the best out.length locations whose name contains the query (ignoring case),
+    // best first, and returns how many were written. An empty query matches nothing. Every match is
+    // scored, so which ones make the cut doesn't depend on insertion order; see score().
+    public synchronized int search(String query, int[] out) {
+        String q = normalize(query);
+        if (q.isEmpty() || out.length == 0) {
+            return 0;
+        }
+        if (topScores.length < out.length) {
+            topScores = new long[out.length];
+        }
+        int count = 0;
+        if (q.length() < 3) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                count = offer(slot, q, out, count);
+            }
+        } else {
+            // Candidates come from the rarest trigram; contains() confirms the rest
+            int best = -1;
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                int cell = findCell(trigram(q, i));
+                if (cell < 0) {
+                    return 0;
+                }
+                if (best < 0 || postingCounts[cell] < postingCounts[best]) {
+                    best = cell;
+                }
+            }
+            int[] slots = postings[best];
+            int n = postingCounts[best];
+            for (int i = 0; i < n; i++) {
+                count = offer(slots[i], q, out, count);
+            }
+        }
+        return count;
+    }
+
+    // Bounded top-k: insertion into the sorted topScores/out, dropping the worst once full
+    private int offer(int slot, String q, int[] out, int count) {
+        String name = names[slot];
+        if (name == null) {
+            return count;
+        }
+        int at = name.indexOf(q);
+        if (at < 0) {
+            return count;
+        }
+        long score = score(name, q, at, slotIds[slot]);
+        if (count == out.length && score >= topScores[count - 1]) {
+            return count;
+        }
+        int i = count == out.length ? count - 1 : count++;
+        while (i > 0 && topScores[i - 1] > score) {
+            topScores[i] = topScores[i - 1];
+            out[i] = out[i - 1];
+            i--;
+        }
+        topScores[i] = score;
+        out[i] = slotIds[slot];
+        return count;
+    }
+
+    // Lower is better: an exact name, then the query as the name's prefix, then at the start of a later
+    // word, then anywhere. Within a class shorter names come first, being closer to what was typed,
+    // and ids break ties so results are stable.
+    private static long score(String name, String q, int firstAt, int id) {
+        int rank;
+        if (firstAt == 0) {
+            rank = name.length() == q.length() ? 0 : 1;
+        } else {
+            rank = 3;
+            for (int at = firstAt; at >= 0; at = name.indexOf(q, at + 1)) {
+                if (!Character.isLetterOrDigit(name.charAt(at - 1))) {
+                    rank = 2;
+                    break;
+                }
+            }
+        }
+        return ((long) rank << 48) | ((long) Math.min(name.length(), 0xFFFF) << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private void addPosting(long key, int slot) {
+        if ((trigramCount + 1) * 4 > trigramKeys.length * 3) {
+            growTable();
+        }
+        int cell = probe(key);
+        if (postings[cell] == null) {
+            trigramKeys[cell] = key;
+            postings[cell] = new int[INITIAL_POSTINGS];
+            trigramCount++;
+        }
+        int n = postingCounts[cell];
+        // A name repeating a trigram ("banana") would otherwise list the slot twice
+        if (n > 0 && postings[cell][n - 1] == slot) {
+            return;
+        }
+        if (n == postings[cell].length) {
+            postings[cell] = Arrays.copyOf(postings[cell], n * 2);
+        }
+        postings[cell][n] = slot;
+        postingCounts[cell] = n + 1;
+    }
+
+    private int findCell(long key) {
+        int cell = probe(key);
+        return postings[cell] != null ? cell : -1;
+    }
+
+    // Cell holding key, or the empty cell where it would go
+    private int probe(long key) {
+        int mask = trigramKeys.length - 1;
+        int cell = (int) (mix(key) & mask);
+        while (postings[cell] != null && trigramKeys[cell] != key) {
+            cell = (cell + 1) & mask;
+        }
+        return cell;
+    }
+
+    private void growTable() {
+        long[] oldKeys = trigramKeys;
+        int[][] oldPostings = postings;
+        int[] oldCounts = postingCounts;
+        trigramKeys = new long[oldKeys.length * 2];
+        postings = new int[oldKeys.length * 2][];
+        postingCounts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPostings[i] != null) {
+                int cell = probe(oldKeys[i]);
+                trigramKeys[cell] = oldKeys[i];
+                postings[cell] = oldPostings[i];
+                postingCounts[cell] = oldCounts[i];
+            }
+        }
+    }
+
+    // Rebuilds everything from the live slots so removed names stop costing memory and query time
+    private void compact() {
+        int[] oldIds = slotIds;
+        String[] oldNames = names;
+        int oldCount = slotCount;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < oldCount - removedCount) {
+            capacity *= 2;
+        }
+        slotIds = new int[capacity];
+        names = new String[capacity];
+        slotCount = 0;
+        removedCount = 0;
+        slotById.clear();
+        trigramKeys = new long[INITIAL_CAPACITY];
+        postings = new int[INITIAL_CAPACITY][];
+        postingCounts = new int[INITIAL_CAPACITY];
+        trigramCount = 0;
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (oldNames[slot] != null) {
+                add(oldIds[slot], oldNames[slot]);
+            }
+        }
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 29);
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.wristbandapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Single entry point for saved locations. Database work runs on background executors and results
+// and change events are delivered on the main thread.
+// Writes (including imports) share one thread so they apply in the order they were requested;
+// reads use a small separate pool so a long import doesn't hold up the list or the service.
+public class LocationRepository {
+    private static final String TAG = "LocationRepository";
+    private static final int READ_THREADS = 2;
+    public static final int SEARCH_LIMIT = 200;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public interface ErrorCallback {
+        void onError(Exception e);
+    }
+
+    // Delivered on the main thread, in write order. version increases by one per event.
+    public interface OnLocationsChangedListener {
+        void onLocationInserted(int version, LocationItem item);
+
+        void onLocationDeleted(int version, int id);
+
+        // Many rows changed at once (e.g. a bulk import); reload instead of applying deltas
+        void onLocationsChanged(int version);
+    }
+
+    private static LocationRepository instance;
+
+    private final DatabaseHelper databaseHelper;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    private final List<OnLocationsChangedListener> listeners = new CopyOnWriteArrayList<>();
+    // Only incremented on the write thread
+    private final AtomicInteger dataVersion = new AtomicInteger();
+    // Built on the write thread on first search and kept current by every write after that
+    private volatile LocationNameIndex nameIndex;
+    // Set by insertChunk, so an import announces its rows once at the end. Write thread only.
+    private boolean importChangedRows;
+
+    public static synchronized LocationRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationRepository(DatabaseHelper.getInstance(context));
+        }
+        return instance;
+    }
+
+    private LocationRepository(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+        // Unbounded queues: every task's callback has to run, and writes must stay off the main thread
+        // and in order, so nothing may be dropped or run by the caller. One user can't queue enough to matter.
+        writeExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("location-write"));
+        readExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("location-read"));
+    }
+
+    public void addOnLocationsChangedListener(OnLocationsChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnLocationsChangedListener(OnLocationsChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    // File setup that has to stay off the main thread, such as mapping the event journal. Runs in
+    // order with the writes.
+    void executeOnWriteThread(Runnable task) {
+        writeExecutor.execute(task);
+    }
+
+    public int getDataVersion() {
+        return dataVersion.get();
+    }
+
+    public void insertLocation(String name, double lat, double lng, float radius) {
+        insert(new LocationItem(0, name, lat, lng, radius));
+    }
+
+    // vertices are lat, lng pairs, at least three points
+    public void insertPolygon(String name, double[] vertices) {
+        insert(LocationItem.fromPolygon(0, name, vertices));
+    }
+
+    private void insert(LocationItem item) {
+        writeExecutor.execute(() -> {
+            long id = databaseHelper.insertLocation(item.name, item.latitude, item.longitude, item.radiusMeters,
+                    item.polygon);
+            if (id == -1) {
+                Log.e(TAG, "Insert of '" + item.name + "' failed");
+                return;
+            }
+            item.id = (int) id;
+            if (nameIndex != null) {
+                nameIndex.add(item.id, item.name);
+            }
+            warmDisplayText(item);
+            int version = dataVersion.incrementAndGet();
+            mainHandler.post(() -> {
+                for (OnLocationsChangedListener listener : listeners) {
+                    listener.onLocationInserted(version, item);
+                }
+            });
+        });
+    }
+
+    public void deleteLocation(int id) {
+        writeExecutor.execute(() -> {
+            if (!databaseHelper.deleteLocation(id)) {
+                return;
+            }
+            if (nameIndex != null) {
+                nameIndex.remove(id);
+            }
+            int version = dataVersion.incrementAndGet();
+            mainHandler.post(() -> {
+                for (OnLocationsChangedListener listener : listeners) {
+                    listener.onLocationDeleted(version, id);
+                }
+            });
+        });
+    }
+
+    public void importLocations(InputStream in, long totalBytes, GeofenceImporter.ProgressListener progress,
+            Callback<GeofenceImporter.Result> callback, ErrorCallback onError) {
+        writeExecutor.execute(() -> {
+            try {
+                GeofenceImporter.Result result = new GeofenceImporter(this).importFrom(in, totalBytes,
+                        (imported, bytesRead, total) -> mainHandler.post(
+                                () -> progress.onProgress(imported, bytesRead, total)));
+                mainHandler.post(() -> callback.onResult(result));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Import failed", e);
+                mainHandler.post(() -> onError.onError(e));
+            } finally {
+                closeQuietly(in);
+                // Also after a failure part way through: the chunks before it are committed
+                if (importChangedRows) {
+                    importChangedRows = false;
+                    int version = dataVersion.incrementAndGet();
+                    mainHandler.post(() -> {
+                        for (OnLocationsChangedListener listener : listeners) {
+                            listener.onLocationsChanged(version);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Called by GeofenceImporter on the write thread for each chunk. Listeners hear about the rows
+    // once the whole import is done, so a large file costs one reload rather than one per chunk.
+    int insertChunk(List<LocationItem> items) {
+        int inserted = databaseHelper.insertLocations(items);
+        if (nameIndex != null) {
+            for (LocationItem item : items) {
+                nameIndex.add(item.id, item.name);
+            }
+        }
+        if (inserted > 0) {
+            importChangedRows = true;
+        }
+        return inserted;
+    }
+
+    public void exportLocations(OutputStream out, GeofenceFormat format, GeofenceExporter.ProgressListener progress,
+            Callback<Integer> callback, ErrorCallback onError) {
+        readExecutor.execute(() -> {
+            try {
+                int exported = new GeofenceExporter(databaseHelper).exportTo(out, format,
+                        (done, total) -> mainHandler.post(() -> progress.onProgress(done, total)));
+                mainHandler.post(() -> callback.onResult(exported));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Export failed", e);
+                mainHandler.post(() -> onError.onError(e));
+            } finally {
+                closeQuietly(out);
+            }
+        });
+    }
+
+    // Up to limit rows with id > afterId, in id order; pass 0 for the first page
+    public void loadPage(int afterId, int limit, Callback<List<LocationItem>> callback) {
+        readExecutor.execute(() -> {
+            List<LocationItem> items = databaseHelper.getLocationsPage(afterId, limit);
+            for (LocationItem item : items) {
+                warmDisplayText(item);
+            }
+            mainHandler.post(() -> callback.onResult(items));
+        });
+    }
+
+    // The best SEARCH_LIMIT locations whose name contains query, ignoring case, best match first
+    public void search(String query, Callback<List<LocationItem>> callback) {
+        Runnable runSearch = () -> {
+            int[] ids = new int[SEARCH_LIMIT];
+            int count = nameIndex.search(query, ids);
+            // The rows come back in id order; put them back in rank order
+            Map<Integer, LocationItem> byId = new HashMap<>();
+            for (LocationItem item : databaseHelper.getLocationsByIds(ids, count)) {
+                byId.put(item.id, item);
+            }
+            List<LocationItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                LocationItem item = byId.get(ids[i]);
+                // Null if the row was deleted after the index was searched
+                if (item != null) {
+                    warmDisplayText(item);
+                    items.add(item);
+                }
+            }
+            mainHandler.post(() -> callback.onResult(items));
+        };
+        if (nameIndex != null) {
+            readExecutor.execute(runSearch);
+            return;
+        }
+        // Build where writes happen so none can slip in between the scan and the first update
+        writeExecutor.execute(() -> {
+            if (nameIndex == null) {
+                LocationNameIndex index = new LocationNameIndex();
+                databaseHelper.forEachName(index::add);
+                nameIndex = index;
+            }
+            readExecutor.execute(runSearch);
+        });
+    }
+
+    // Builds the service's snapshot off the main thread. With bounds, only fences whose box
+    // intersects them are loaded; pass null to load everything.
+    public void loadSnapshot(double[] bounds, Callback<GeofenceSnapshot> callback) {
+        readExecutor.execute(() -> {
+            // Read the version first so a write racing with the query shows up as a newer event
+            int version = dataVersion.get();
+            List<LocationItem> items = bounds != null
+                    ? databaseHelper.getLocationsInBounds(bounds[0], bounds[1], bounds[2], bounds[3])
+                    : databaseHelper.getAllLocations();
+            GeofenceSnapshot snapshot = new GeofenceSnapshot(version, items);
+            mainHandler.post(() -> callback.onResult(snapshot));
+        });
+    }
+
+    // Format the list's display strings off the main thread so binding a row doesn't have to
+    private static void warmDisplayText(LocationItem item) {
+        item.getCoordsText();
+        item.getRadiusText();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+    }
+}
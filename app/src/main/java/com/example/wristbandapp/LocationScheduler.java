@@ -0,0 +1,74 @@
+package com.example.wristbandapp;
+
+// Picks the location request interval and minimum distance from how far the user is from the
+// nearest fence edge. The interval is bounded so that even at the assumed speed the user can't
+// cover more than half the remaining distance between two fixes, and by the sleep hint from
+// arrival prediction so a fence straight ahead is re-checked before its alert is due.
+public class LocationScheduler {
+    // Beyond this the user is treated as "far away" and the slowest tier is used
+    public static final double FAR_DISTANCE_METERS = 20000;
+
+    private static final long[] INTERVAL_TIERS_MS = { 5000, 10000, 20000, 30000, 60000, 120000 };
+    private static final float MAX_MIN_DISTANCE_METERS = 500f;
+    // Assume at least this speed so a stationary user who starts driving is still caught in time
+    private static final float FLOOR_SPEED_MPS = 8f;
+    // Headroom over the last measured speed (acceleration, GPS speed lag)
+    private static final float SPEED_MARGIN = 1.5f;
+    private static final double SAFETY_FRACTION = 0.5;
+
+    private int tier = 0;
+
+    public long getIntervalMs() {
+        return INTERVAL_TIERS_MS[tier];
+    }
+
+    public float getMinDistanceMeters() {
+        return minDistanceForTier(tier);
+    }
+
+    // Back to the tightest sampling, e.g. after fences were added or the service restarted
+    public boolean reset() {
+        boolean changed = tier != 0;
+        tier = 0;
+        return changed;
+    }
+
+    // Returns true when the request parameters changed and the listener should be re-registered
+    public boolean update(double edgeDistanceMeters, float speedMps) {
+        return update(edgeDistanceMeters, speedMps, Long.MAX_VALUE);
+    }
+
+    // maxSleepMs caps the interval regardless of distance; Long.MAX_VALUE for no cap
+    public boolean update(double edgeDistanceMeters, float speedMps, long maxSleepMs) {
+        int newTier = Math.min(tierFor(edgeDistanceMeters, speedMps), tierWithin(maxSleepMs));
+        if (newTier == tier) {
+            return false;
+        }
+        tier = newTier;
+        return true;
+    }
+
+    static int tierFor(double edgeDistanceMeters, float speedMps) {
+        float assumedSpeed = Math.max(speedMps * SPEED_MARGIN, FLOOR_SPEED_MPS);
+        double budgetMs = edgeDistanceMeters * SAFETY_FRACTION / assumedSpeed * 1000;
+        return tierWithin(budgetMs);
+    }
+
+    // Slowest tier whose interval fits the budget
+    private static int tierWithin(double budgetMs) {
+        for (int i = INTERVAL_TIERS_MS.length - 1; i > 0; i--) {
+            if (INTERVAL_TIERS_MS[i] <= budgetMs) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static float minDistanceForTier(int tier) {
+        if (tier == 0) {
+            // Keep updates flowing while close so exits are noticed even when standing still
+            return 0f;
+        }
+        return Math.min(MAX_MIN_DISTANCE_METERS, FLOOR_SPEED_MPS * INTERVAL_TIERS_MS[tier] / 1000f / 4);
+    }
+}
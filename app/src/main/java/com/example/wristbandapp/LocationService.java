@@ -12,36 +12,181 @@ import android.content.SharedPreferences;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import java.util.List;
-
 public class LocationService extends Service {
+    // Called on the main thread with the current state when added, then again on every change
+    public interface OnStateChangedListener {
+        void onStateChanged(ServiceState state);
+    }
+
+    public class LocalBinder extends Binder {
+        public LocationService getService() {
+            return LocationService.this;
+        }
+    }
+
     private static final String TAG = "LocationService";
+    private static final TraceLog.Event LOG_FIX = new TraceLog.Event(Log.DEBUG, TAG, "New location: %f, %f");
+    private static final TraceLog.Event LOG_ENTER = new TraceLog.Event(Log.INFO, TAG, "Entered %s");
+    private static final TraceLog.Event LOG_PREDICTED = new TraceLog.Event(Log.INFO, TAG, "Arriving at %s in %ds");
+    private static final TraceLog.Event LOG_EXIT = new TraceLog.Event(Log.INFO, TAG, "Exited fence %d");
+    private static final TraceLog.Event LOG_LED_ON = new TraceLog.Event(Log.INFO, TAG,
+            "Fence %d active. Triggering ESP32.");
+    private static final TraceLog.Event LOG_LED_OFF = new TraceLog.Event(Log.INFO, TAG,
+            "No active fence. Turning OFF ESP32.");
+    private static final TraceLog.Event LOG_MANUAL_OFF = new TraceLog.Event(Log.INFO, TAG,
+            "Manual Stop Triggered. Turning off LED.");
+    private static final TraceLog.Event LOG_BLE_STATE = new TraceLog.Event(Log.DEBUG, TAG, "BLE Connected: %s");
+    private static final TraceLog.Event LOG_SNAPSHOT = new TraceLog.Event(Log.DEBUG, TAG,
+            "Geofence snapshot v%d loaded with %d locations");
+    private static final TraceLog.Event LOG_REQUEST = new TraceLog.Event(Log.DEBUG, TAG,
+            "Location updates every %dms / %fm");
+    private static final TraceLog.Event LOG_NO_PERMISSION = new TraceLog.Event(Log.ERROR, TAG,
+            "Location permission not granted: %s");
     private static final String CHANNEL_ID = "LocationServiceChannel";
     private LocationManager locationManager;
-    private DatabaseHelper databaseHelper;
+    private LocationRepository repository;
     private BleManager bleManager;
-    private boolean isLedOn = false;
-    private boolean isManualOverride = false;
+    private EventJournal journal;
+    private volatile GeofenceSnapshot geofences = GeofenceSnapshot.EMPTY;
+    // Incremented per reload request so a slow load for an old window can't replace a newer one
+    private int reloadGeneration;
+
+    // Only fences within this distance of the load window centre are kept in memory. The window is
+    // re-centred (one bounding-box query) once the user has moved half of it, which still leaves more than
+    // LocationScheduler.FAR_DISTANCE_METERS of coverage in every direction.
+    private static final double LOAD_WINDOW_METERS = 50000;
+    private boolean hasLoadWindow = false;
+    private double loadWindowLat;
+    private double loadWindowLng;
+
+    private SharedPreferences prefs;
+    // The fix being evaluated, so an LED change can be timed through to its GATT write
+    private long currentFixNanos;
+    private long lastFixArrivalMs;
+
+    private final IBinder binder = new LocalBinder();
+    // Only touched on the main thread
+    private ServiceState state = ServiceState.INITIAL;
+    private final List<OnStateChangedListener> stateListeners = new ArrayList<>();
+    // Latest fix, folded into state only while someone listens so unbound fixes don't allocate
+    private boolean hasLastFix;
+    private double lastFixLat;
+    private double lastFixLng;
+    private float lastFixAccuracy;
+    private long lastFixTimeMs;
+    private Notification notification;
+
+    private final GeofenceMonitor monitor = new GeofenceMonitor(new GeofenceMonitor.Listener() {
+        @Override
+        public void onEnter(LocationItem fence, double lat, double lng, float accuracy) {
+            TraceLog.log(LOG_ENTER, fence.name);
+            journal.recordFence(EventJournal.TYPE_ENTER, fence.id, lat, lng, accuracy);
+            saveFenceState();
+        }
+
+        @Override
+        public void onPredictedArrival(LocationItem fence, float secondsToEntry, double lat, double lng,
+                float speedMps) {
+            TraceLog.log(LOG_PREDICTED, fence.name, Math.round(secondsToEntry));
+            journal.recordPrediction(fence.id, lat, lng, secondsToEntry, speedMps);
+        }
+
+        @Override
+        public void onExit(int fenceId, double lat, double lng, float accuracy) {
+            TraceLog.log(LOG_EXIT, fenceId);
+            journal.recordFence(EventJournal.TYPE_EXIT, fenceId, lat, lng, accuracy);
+            saveFenceState();
+        }
+
+        @Override
+        public void onLedChanged(boolean on, int fenceId) {
+            Metrics.markAlertFix(currentFixNanos);
+            // Only LED transitions reach the band, not every fence event
+            if (on) {
+                TraceLog.log(LOG_LED_ON, fenceId);
+                bleManager.sendAlert();
+            } else {
+                TraceLog.log(LOG_LED_OFF);
+                bleManager.sendOffAlert();
+            }
+            publishActiveFence();
+        }
+
+        @Override
+        public void onScheduleChanged() {
+            requestLocationUpdates();
+        }
+    });
+
+    // Events arrive on the main thread; deltas are idempotent so applying one the snapshot already has is harmless
+    private final LocationRepository.OnLocationsChangedListener locationsChangedListener =
+            new LocationRepository.OnLocationsChangedListener() {
+        @Override
+        public void onLocationInserted(int version, LocationItem item) {
+            GeofenceSnapshot current = geofences;
+            if (version == current.version + 1) {
+                geofences = current.withLocation(version, item);
+            } else {
+                // Missed an update somewhere; fall back to a full reload
+                reloadGeofences();
+            }
+            monitor.onFencesAdded();
+        }
+
+        @Override
+        public void onLocationsChanged(int version) {
+            if (version != geofences.version) {
+                reloadGeofences();
+            }
+        }
+
+        @Override
+        public void onLocationDeleted(int version, int id) {
+            GeofenceSnapshot current = geofences;
+            if (version == current.version + 1) {
+                geofences = current.withoutLocation(version, id);
+            } else {
+                reloadGeofences();
+            }
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
-        databaseHelper = new DatabaseHelper(this);
+        TraceLog.refreshLevels();
+        repository = LocationRepository.getInstance(this);
+        journal = EventJournal.getInstance(this);
+        repository.addOnLocationsChangedListener(locationsChangedListener);
+        reloadGeofences();
 
-        SharedPreferences prefs = getSharedPreferences("WristbandPrefs", MODE_PRIVATE);
+        prefs = getSharedPreferences("WristbandPrefs", MODE_PRIVATE);
+        // Per-fence state from before a restart, so we don't alert again for a fence we are already in
+        monitor.restoreState(prefs.getString("FENCE_STATE", null));
+        monitor.setLeadTimeMs(prefs.getInt("ARRIVAL_LEAD_SEC", 0) * 1000L);
+        // Fence names aren't loaded yet; the first snapshot fills the name in
+        state = state.withLed(monitor.isLedOn(), monitor.getActiveFenceId(), null);
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
         String savedMac = prefs.getString("ESP32_MAC", null);
 
         bleManager = new BleManager(this, connected -> {
-            Log.d(TAG, "BLE Connected: " + connected);
-            broadcastBleStatus(connected);
+            TraceLog.log(LOG_BLE_STATE, connected);
+            publishState(state.withBleConnected(connected));
         });
 
         if (savedMac != null) {
@@ -49,123 +194,206 @@ public class LocationService extends Service {
         }
 
         locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-    }
-
-    private void broadcastBleStatus(boolean connected) {
-        Intent bcIntent = new Intent("BLE_STATUS");
-        bcIntent.setPackage(getPackageName());
-        bcIntent.putExtra("connected", connected);
-        sendBroadcast(bcIntent);
-    }
 
-    @SuppressLint("MissingPermission")
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
         createNotificationChannel();
-
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0,
                 notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+        notification = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("Wristband App Running")
                 .setContentText("Monitoring location for alarms...")
                 .setSmallIcon(android.R.drawable.ic_menu_mylocation)
                 .setContentIntent(pendingIntent)
                 .build();
+    }
 
-        startForeground(1, notification);
+    private void reloadGeofences() {
+        double[] bounds = null;
+        if (hasLoadWindow) {
+            double latSpan = FenceTable.latSpanDegrees(LOAD_WINDOW_METERS);
+            double lngSpan = FenceTable.lngSpanDegrees(loadWindowLat, LOAD_WINDOW_METERS);
+            bounds = new double[] { loadWindowLat - latSpan, loadWindowLat + latSpan,
+                    loadWindowLng - lngSpan, loadWindowLng + lngSpan };
+        }
+        // Without a window (no fix yet) we can't tell which fences matter, so load them all
+        int generation = ++reloadGeneration;
+        repository.loadSnapshot(bounds, snapshot -> {
+            if (generation != reloadGeneration) {
+                return;
+            }
+            if (snapshot.version < geofences.version) {
+                // Deltas were applied to the old snapshot while loading and may be missing here
+                reloadGeofences();
+                return;
+            }
+            geofences = snapshot;
+            TraceLog.log(LOG_SNAPSHOT, snapshot.version, snapshot.locations.size());
+            if (state.ledOn && state.activeFenceName == null) {
+                publishActiveFence();
+            }
+        });
+    }
+
+    private void updateLoadWindow(double lat, double lng) {
+        if (hasLoadWindow
+                && FenceTable.haversineMeters(lat, lng, loadWindowLat, loadWindowLng) < LOAD_WINDOW_METERS / 2) {
+            return;
+        }
+        hasLoadWindow = true;
+        loadWindowLat = lat;
+        loadWindowLng = lng;
+        reloadGeofences();
+    }
 
-        if (intent != null) {
-            String action = intent.getAction();
-            if ("ACTION_SCAN_BLE".equals(action)) {
-                if (bleManager != null) {
-                    if (bleManager.isConnected()) {
-                        broadcastBleStatus(true);
-                    } else {
-                        bleManager.scanAndConnect();
-                    }
-                }
-            } else if ("ACTION_GET_BLE_STATUS".equals(action)) {
-                if (bleManager != null) {
-                    broadcastBleStatus(bleManager.isConnected());
-                }
-            } else if ("ACTION_TURN_OFF_LED".equals(action)) {
-                if (bleManager != null) {
-                    Log.i(TAG, "Manual Stop Triggered. Turning off LED.");
-                    bleManager.sendOffAlert();
-                    isLedOn = false;
-                    isManualOverride = true;
-                }
+    // Held in a field: SharedPreferences only keeps a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener = (sharedPrefs, key) -> {
+        if ("ARRIVAL_LEAD_SEC".equals(key)) {
+            monitor.setLeadTimeMs(sharedPrefs.getInt("ARRIVAL_LEAD_SEC", 0) * 1000L);
+        } else if ("ALERT_MODE".equals(key)) {
+            bleManager.setAlertMode(BleManager.readAlertMode(sharedPrefs));
+        }
+    };
+
+    private void saveFenceState() {
+        prefs.edit().putString("FENCE_STATE", monitor.saveState()).apply();
+    }
+
+    private String fenceName(int id) {
+        for (LocationItem item : geofences.locations) {
+            if (item.id == id) {
+                return item.name;
             }
         }
+        return null;
+    }
+
+    // The monitor's LED owner. It can change without the LED switching, on a direct handover from one
+    // fence to the next, so the fix path checks it too.
+    private void publishActiveFence() {
+        int fenceId = monitor.getActiveFenceId();
+        publishState(state.withLed(monitor.isLedOn(), fenceId, fenceId != -1 ? fenceName(fenceId) : null));
+    }
+
+    // Listeners only hear about real changes: an unchanged state comes back from with*() as the same instance
+    private void publishState(ServiceState next) {
+        if (next == state) {
+            return;
+        }
+        state = next;
+        // Backwards, so a listener can remove itself from its callback
+        for (int i = stateListeners.size() - 1; i >= 0; i--) {
+            stateListeners.get(i).onStateChanged(next);
+        }
+    }
+
+    // Main thread only, like the rest of the UI-facing methods below
+    public void addOnStateChangedListener(OnStateChangedListener listener) {
+        if (hasLastFix) {
+            state = state.withFix(lastFixLat, lastFixLng, lastFixAccuracy, lastFixTimeMs);
+        }
+        stateListeners.add(listener);
+        listener.onStateChanged(state);
+    }
+
+    public void removeOnStateChangedListener(OnStateChangedListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    public void dumpLink(PrintWriter writer) {
+        bleManager.dump(writer);
+    }
+
+    public void scanForWristband() {
+        // Already connected: the UI has that from the state
+        if (!bleManager.isConnected()) {
+            bleManager.scanAndConnect();
+        }
+    }
+
+    public void turnOffLed() {
+        TraceLog.log(LOG_MANUAL_OFF);
+        journal.recordManualOff();
+        bleManager.sendOffAlert();
+        monitor.manualOff();
+        saveFenceState();
+        publishState(state.withLed(false, -1, null));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Every startForegroundService() needs a startForeground(); the notification itself is built once
+        startForeground(1, notification);
+        requestLocationUpdates();
+        return START_STICKY;
+    }
 
+    @SuppressLint("MissingPermission")
+    private void requestLocationUpdates() {
+        long intervalMs = monitor.getScheduler().getIntervalMs();
+        float minDistanceM = monitor.getScheduler().getMinDistanceMeters();
         try {
-            // minTimeMs = 5000 (5 seconds)
-            // minDistanceM = 0 (Force updates even if perfectly stationary)
+            // Re-registering the same listener replaces its previous request
             locationManager.requestLocationUpdates(
                     LocationManager.GPS_PROVIDER,
-                    5000,
-                    0,
+                    intervalMs,
+                    minDistanceM,
                     locationListener);
             locationManager.requestLocationUpdates(
                     LocationManager.NETWORK_PROVIDER,
-                    5000,
-                    0,
+                    intervalMs,
+                    minDistanceM,
                     locationListener);
+            TraceLog.log(LOG_REQUEST, intervalMs, minDistanceM);
         } catch (SecurityException e) {
-            Log.e(TAG, "Location permission not granted", e);
+            TraceLog.log(LOG_NO_PERMISSION, e);
         }
-
-        return START_STICKY;
     }
 
     private final LocationListener locationListener = new LocationListener() {
         @Override
         public void onLocationChanged(@NonNull Location location) {
-            Log.d(TAG, "New Location: " + location.getLatitude() + ", " + location.getLongitude());
-            checkDistanceToLocations(location);
-        }
-    };
-
-    private void checkDistanceToLocations(Location currentLocation) {
-        List<LocationItem> savedLocations = databaseHelper.getAllLocations();
-        boolean nearAny = false;
-
-        for (LocationItem item : savedLocations) {
-            float[] results = new float[1];
-            Location.distanceBetween(
-                    currentLocation.getLatitude(), currentLocation.getLongitude(),
-                    item.latitude, item.longitude,
-                    results);
-
-            float distanceInMeters = results[0];
-            Log.d(TAG, "Distance to " + item.name + ": " + distanceInMeters + "m");
-
-            if (distanceInMeters <= item.radiusMeters) {
-                nearAny = true;
-                if (!isLedOn && !isManualOverride) {
-                    Log.i(TAG, "Within radius of " + item.name + "! Triggering ESP32.");
-                    bleManager.sendAlert();
-                    isLedOn = true;
-                }
-                break;
+            TraceLog.log(LOG_FIX, location.getLatitude(), location.getLongitude());
+            long nowMs = SystemClock.elapsedRealtime();
+            if (lastFixArrivalMs != 0) {
+                Metrics.FIX_INTERVAL.record(nowMs - lastFixArrivalMs);
             }
-        }
+            lastFixArrivalMs = nowMs;
+            Metrics.FIXES.increment();
 
-        if (!nearAny) {
-            if (isLedOn) {
-                Log.i(TAG, "Exited all radii or deleted target. Turning OFF ESP32.");
-                bleManager.sendOffAlert();
-                isLedOn = false;
+            currentFixNanos = location.getElapsedRealtimeNanos();
+            long fixTimeMs = currentFixNanos / 1000000;
+            float accuracy = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+            float speed = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+            long startNanos = System.nanoTime();
+            boolean accepted = monitor.onFix(geofences, fixTimeMs, nowMs,
+                    location.getLatitude(), location.getLongitude(), accuracy, speed);
+            Metrics.FENCE_EVALUATION.record((System.nanoTime() - startNanos) / 1000);
+            if (!accepted) {
+                Metrics.FIXES_DROPPED.increment();
+            } else if (monitor.getActiveFenceId() != state.activeFenceId) {
+                publishActiveFence();
+            }
+            journal.recordFix(location.getTime(), location.getLatitude(), location.getLongitude(), accuracy,
+                    location.getProvider(), accepted);
+            hasLastFix = true;
+            lastFixLat = location.getLatitude();
+            lastFixLng = location.getLongitude();
+            lastFixAccuracy = accuracy;
+            lastFixTimeMs = location.getTime();
+            if (!stateListeners.isEmpty()) {
+                publishState(state.withFix(lastFixLat, lastFixLng, lastFixAccuracy, lastFixTimeMs));
+            }
+            if (accepted) {
+                updateLoadWindow(monitor.getLatitude(), monitor.getLongitude());
             }
-            isManualOverride = false;
         }
-    }
+    };
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        repository.removeOnLocationsChangedListener(locationsChangedListener);
+        prefs.unregisterOnSharedPreferenceChangeListener(prefsListener);
         if (locationManager != null) {
             try {
                 locationManager.removeUpdates(locationListener);
@@ -173,12 +401,25 @@ public class LocationService extends Service {
             }
         }
         bleManager.disconnect();
+        stateListeners.clear();
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
+    }
+
+    // adb shell dumpsys activity service com.example.wristbandapp/.LocationService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("LED on: " + monitor.isLedOn() + ", active fence: " + monitor.getActiveFenceId());
+        writer.println("Location request: " + monitor.getScheduler().getIntervalMs() + "ms / "
+                + monitor.getScheduler().getMinDistanceMeters() + "m");
+        writer.println("Geofences: v" + geofences.version + ", " + geofences.locations.size() + " loaded");
+        writer.println("BLE connected: " + (bleManager != null && bleManager.isConnected()));
+        Metrics.dump(writer);
+        TraceLog.dump(writer);
     }
 
     private void createNotificationChannel() {
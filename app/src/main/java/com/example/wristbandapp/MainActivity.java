@@ -1,13 +1,26 @@
 package com.example.wristbandapp;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
-import android.content.Context;
+import android.app.AlertDialog;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.provider.OpenableColumns;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.text.format.DateFormat;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.EditText;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -20,28 +33,102 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
-
-    private DatabaseHelper databaseHelper;
+    private LocationRepository repository;
     private LocationAdapter adapter;
+    // Last list submitted to the adapter; replaced, never modified, because ListAdapter diffs it in the background
     private List<LocationItem> locationItems = new ArrayList<>();
     private ActivityResultLauncher<Intent> mapPickerLauncher;
+    private ActivityResultLauncher<String[]> importLauncher;
+    // One per format: CreateDocument fixes the MIME type the file is saved with when it is registered
+    private final EnumMap<GeofenceFormat, ActivityResultLauncher<String>> exportLaunchers =
+            new EnumMap<>(GeofenceFormat.class);
+    private ActivityResultLauncher<String> journalExportLauncher;
+    // Repository version the list reflects; -1 until the first load arrives
+    private int loadedVersion = -1;
+    private boolean loadPending;
+    // Keyset paging: pages are fetched by id as the user scrolls, until a short page marks the end
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private boolean reachedEnd;
+    // Bumped whenever the list is reset, so results of older page loads and searches are dropped
+    private int loadGeneration;
+    private String searchQuery = "";
+    private final Runnable searchRunnable = this::loadLocations;
 
     private static final int PERMISSION_REQUEST_CODE = 1001;
 
-    private final BroadcastReceiver bleReceiver = new BroadcastReceiver() {
+    // Set while bound to LocationService, between onStart and onStop
+    private LocationService locationService;
+    private final LocationService.OnStateChangedListener stateListener = this::showServiceState;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            locationService = ((LocationService.LocalBinder) binder).getService();
+            locationService.addOnStateChangedListener(stateListener);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            locationService = null;
+        }
+    };
+
+    private final LocationRepository.OnLocationsChangedListener locationsChangedListener =
+            new LocationRepository.OnLocationsChangedListener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            boolean connected = intent.getBooleanExtra("connected", false);
-            TextView tvBleStatus = findViewById(R.id.tvBleStatus);
-            if (tvBleStatus != null) {
-                tvBleStatus.setText("BLE: " + (connected ? "Connected" : "Disconnected"));
-                tvBleStatus.setTextColor(connected ? 0xFF00AA00 : 0xFFAA0000); // Green if connected, Red if
-                                                                               // disconnected
+        public void onLocationInserted(int version, LocationItem item) {
+            if (isSearching()) {
+                loadLocations();
+                return;
+            }
+            if (version != loadedVersion + 1) {
+                loadLocations();
+                return;
+            }
+            loadedVersion = version;
+            if (!reachedEnd) {
+                // New ids are the largest, so a later page will pick it up
+                return;
             }
+            List<LocationItem> updated = new ArrayList<>(locationItems.size() + 1);
+            updated.addAll(locationItems);
+            updated.add(item);
+            submitLocations(updated);
+        }
+
+        @Override
+        public void onLocationDeleted(int version, int id) {
+            if (!isSearching() && version != loadedVersion + 1) {
+                loadLocations();
+                return;
+            }
+            loadedVersion = version;
+            List<LocationItem> updated = new ArrayList<>(locationItems.size());
+            for (LocationItem existing : locationItems) {
+                if (existing.id != id) {
+                    updated.add(existing);
+                }
+            }
+            submitLocations(updated);
+        }
+
+        @Override
+        public void onLocationsChanged(int version) {
+            loadLocations();
         }
     };
 
@@ -50,7 +137,8 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        databaseHelper = new DatabaseHelper(this);
+        repository = LocationRepository.getInstance(this);
+        repository.addOnLocationsChangedListener(locationsChangedListener);
 
         mapPickerLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
@@ -61,31 +149,82 @@ public class MainActivity extends AppCompatActivity {
                         double lat = data.getDoubleExtra("lat", 0);
                         double lng = data.getDoubleExtra("lng", 0);
                         float radius = data.getFloatExtra("radius", 50);
+                        double[] polygon = data.getDoubleArrayExtra("polygon");
 
-                        databaseHelper.insertLocation(name, lat, lng, radius);
-                        loadLocations();
+                        if (polygon != null) {
+                            repository.insertPolygon(name, polygon);
+                        } else {
+                            repository.insertLocation(name, lat, lng, radius);
+                        }
+                    }
+                });
+
+        importLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importLocations(uri);
+            }
+        });
+        for (GeofenceFormat format : GeofenceFormat.values()) {
+            exportLaunchers.put(format, registerForActivityResult(
+                    new ActivityResultContracts.CreateDocument(format.mimeType), uri -> {
+                        if (uri != null) {
+                            exportLocations(uri, format);
+                        }
+                    }));
+        }
+        journalExportLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"),
+                uri -> {
+                    if (uri != null) {
+                        exportJournal(uri);
                     }
                 });
 
         RecyclerView recyclerView = findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new LocationAdapter(locationItems, item -> {
-            databaseHelper.deleteLocation(item.id);
-            loadLocations();
-        });
+        adapter = new LocationAdapter(item -> repository.deleteLocation(item.id));
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) view.getLayoutManager();
+                if (dy > 0 && layoutManager != null
+                        && layoutManager.findLastVisibleItemPosition() >= locationItems.size() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        EditText etSearch = findViewById(R.id.etSearch);
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchQuery = s.toString().trim();
+                etSearch.removeCallbacks(searchRunnable);
+                etSearch.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
 
         findViewById(R.id.btnConnect).setOnClickListener(v -> {
-            Intent serviceIntent = new Intent(this, LocationService.class);
-            serviceIntent.setAction("ACTION_SCAN_BLE");
-            startService(serviceIntent);
+            if (locationService == null) {
+                return;
+            }
+            locationService.scanForWristband();
             Toast.makeText(this, "Scanning for Wristband...", Toast.LENGTH_SHORT).show();
         });
 
         findViewById(R.id.btnTest).setOnClickListener(v -> {
-            Intent serviceIntent = new Intent(this, LocationService.class);
-            serviceIntent.setAction("ACTION_TURN_OFF_LED");
-            startService(serviceIntent);
+            if (locationService == null) {
+                return;
+            }
+            locationService.turnOffLed();
             Toast.makeText(this, "Turning LED OFF manually...", Toast.LENGTH_SHORT).show();
         });
 
@@ -100,32 +239,305 @@ public class MainActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Register receiver for all apps internal traffic
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            ContextCompat.registerReceiver(this, bleReceiver, new IntentFilter("BLE_STATUS"),
-                    ContextCompat.RECEIVER_NOT_EXPORTED);
+    protected void onStart() {
+        super.onStart();
+        // onCreate has already started the service; binding only hands us the instance to talk to
+        bindService(new Intent(this, LocationService.class), serviceConnection, BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (locationService != null) {
+            locationService.removeOnStateChangedListener(stateListener);
+            locationService = null;
+        }
+        unbindService(serviceConnection);
+    }
+
+    private void showServiceState(ServiceState state) {
+        TextView tvBleStatus = findViewById(R.id.tvBleStatus);
+        tvBleStatus.setText("BLE: " + (state.bleConnected ? "Connected" : "Disconnected"));
+        tvBleStatus.setTextColor(state.bleConnected ? 0xFF00AA00 : 0xFFAA0000); // Green if connected, Red if
+                                                                                 // disconnected
+
+        StringBuilder sb = new StringBuilder("LED: ");
+        if (state.ledOn) {
+            sb.append("On (").append(state.activeFenceName != null ? state.activeFenceName
+                    : "fence " + state.activeFenceId).append(')');
+        } else {
+            sb.append("Off");
+        }
+        sb.append("  |  ");
+        if (state.hasFix) {
+            sb.append("Last fix: ").append(DateFormat.getTimeFormat(this).format(new Date(state.lastFixTimeMs)));
+            if (!Float.isNaN(state.lastAccuracy)) {
+                sb.append(" (").append(Math.round(state.lastAccuracy)).append(" m)");
+            }
         } else {
-            registerReceiver(bleReceiver, new IntentFilter("BLE_STATUS"));
+            sb.append("No fix yet");
         }
+        TextView tvServiceState = findViewById(R.id.tvServiceState);
+        tvServiceState.setText(sb);
+    }
 
-        // Request current status from service
-        Intent intent = new Intent(this, LocationService.class);
-        intent.setAction("ACTION_GET_BLE_STATUS");
-        startService(intent);
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.removeOnLocationsChangedListener(locationsChangedListener);
     }
 
     @Override
-    protected void onPause() {
-        super.onPause();
-        unregisterReceiver(bleReceiver);
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_import) {
+            importLauncher.launch(new String[] { "*/*" });
+            return true;
+        } else if (id == R.id.action_export_csv) {
+            launchExport(GeofenceFormat.CSV);
+            return true;
+        } else if (id == R.id.action_export_geojson) {
+            launchExport(GeofenceFormat.GEOJSON);
+            return true;
+        } else if (id == R.id.action_export_gpx) {
+            launchExport(GeofenceFormat.GPX);
+            return true;
+        } else if (id == R.id.action_export_journal) {
+            journalExportLauncher.launch("wristband-events.csv");
+            return true;
+        } else if (id == R.id.action_lead_time) {
+            showLeadTimeDialog();
+            return true;
+        } else if (id == R.id.action_alert_mode) {
+            showAlertModeDialog();
+            return true;
+        } else if (id == R.id.action_diagnostics) {
+            showDiagnosticsDialog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // LocationService picks the change up through its preference listener
+    private void showLeadTimeDialog() {
+        String[] labels = { "On arrival", "1 minute before", "2 minutes before", "3 minutes before",
+                "5 minutes before" };
+        int[] seconds = { 0, 60, 120, 180, 300 };
+        SharedPreferences prefs = getSharedPreferences("WristbandPrefs", MODE_PRIVATE);
+        int current = prefs.getInt("ARRIVAL_LEAD_SEC", 0);
+        int checked = 0;
+        for (int i = 0; i < seconds.length; i++) {
+            if (seconds[i] == current) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Alert lead time")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    prefs.edit().putInt("ARRIVAL_LEAD_SEC", seconds[which]).apply();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // Also picked up by LocationService's preference listener and applied to the live connection
+    private void showAlertModeDialog() {
+        String[] labels = { "Balanced", "Low latency (uses more battery)" };
+        BleManager.AlertMode[] modes = { BleManager.AlertMode.BALANCED, BleManager.AlertMode.LOW_LATENCY };
+        SharedPreferences prefs = getSharedPreferences("WristbandPrefs", MODE_PRIVATE);
+        BleManager.AlertMode current = BleManager.readAlertMode(prefs);
+        int checked = 0;
+        for (int i = 0; i < modes.length; i++) {
+            if (modes[i] == current) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Alert mode")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    prefs.edit().putString("ALERT_MODE", modes[which].name()).apply();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showDiagnosticsDialog() {
+        TextView text = new TextView(this);
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(11);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        text.setPadding(padding, padding, padding, padding);
+        text.setText(diagnosticsText());
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(text);
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle("Diagnostics")
+                .setView(scroll)
+                .setPositiveButton("Close", null)
+                .setNeutralButton("Reset", null)
+                .show();
+        // Set here so Reset refreshes the text instead of closing the dialog
+        dialog.getButton(AlertDialog.BUTTON_NEUTRAL).setOnClickListener(v -> {
+            Metrics.reset();
+            text.setText(diagnosticsText());
+        });
+    }
+
+    private String diagnosticsText() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        if (locationService != null) {
+            locationService.dumpLink(writer);
+        }
+        Metrics.dump(writer);
+        TraceLog.dump(writer);
+        return out.toString();
+    }
+
+    private void launchExport(GeofenceFormat format) {
+        exportLaunchers.get(format).launch("locations." + format.extension);
+    }
+
+    private void importLocations(Uri uri) {
+        TextView tvTitle = findViewById(R.id.tvTitle);
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+        if (in == null) {
+            Toast.makeText(this, "Import failed: cannot open file", Toast.LENGTH_LONG).show();
+            return;
+        }
+        repository.importLocations(in, querySize(uri),
+                (imported, bytesRead, total) -> tvTitle.setText(total > 0
+                        ? "Importing... " + imported + " (" + (bytesRead * 100 / total) + "%)"
+                        : "Importing... " + imported),
+                result -> {
+                    tvTitle.setText("Saved Locations");
+                    Toast.makeText(this, "Imported " + result.imported + " locations"
+                            + (result.skipped > 0 ? " (" + result.skipped + " skipped)" : ""),
+                            Toast.LENGTH_LONG).show();
+                },
+                e -> {
+                    tvTitle.setText("Saved Locations");
+                    Toast.makeText(this, "Import failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+    }
+
+    private void exportLocations(Uri uri, GeofenceFormat format) {
+        TextView tvTitle = findViewById(R.id.tvTitle);
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            out = null;
+        }
+        if (out == null) {
+            Toast.makeText(this, "Export failed: cannot open file", Toast.LENGTH_LONG).show();
+            return;
+        }
+        repository.exportLocations(out, format,
+                (done, total) -> tvTitle.setText("Exporting... " + done + "/" + total),
+                exported -> {
+                    tvTitle.setText("Saved Locations");
+                    Toast.makeText(this, "Exported " + exported + " locations", Toast.LENGTH_LONG).show();
+                },
+                e -> {
+                    tvTitle.setText("Saved Locations");
+                    Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+    }
+
+    // The journal is read straight from its mapped file, so this doesn't need the repository's threads
+    private void exportJournal(Uri uri) {
+        EventJournal journal = EventJournal.getInstance(this);
+        new Thread(() -> {
+            String message;
+            try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+                if (out == null) {
+                    throw new FileNotFoundException(uri.toString());
+                }
+                message = "Exported " + journal.exportCsv(out) + " events";
+            } catch (IOException e) {
+                message = "Export failed: " + e.getMessage();
+            }
+            String result = message;
+            runOnUiThread(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "journal-export").start();
+    }
+
+    private long querySize(Uri uri) {
+        try (Cursor cursor = getContentResolver().query(uri, new String[] { OpenableColumns.SIZE }, null, null,
+                null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        }
+        return -1;
     }
 
+    private boolean isSearching() {
+        return !searchQuery.isEmpty();
+    }
+
+    // Starts the list over: the first page, or the search results when there is a query
     private void loadLocations() {
-        locationItems.clear();
-        locationItems.addAll(databaseHelper.getAllLocations());
-        adapter.notifyDataSetChanged();
+        loadGeneration++;
+        loadPending = false;
+        reachedEnd = false;
+        if (isSearching()) {
+            int generation = loadGeneration;
+            repository.search(searchQuery, items -> {
+                if (generation == loadGeneration) {
+                    submitLocations(items);
+                }
+            });
+        } else {
+            submitLocations(new ArrayList<>());
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (loadPending || reachedEnd || isSearching()) {
+            return;
+        }
+        loadPending = true;
+        int generation = loadGeneration;
+        int version = repository.getDataVersion();
+        int afterId = locationItems.isEmpty() ? 0 : locationItems.get(locationItems.size() - 1).id;
+        repository.loadPage(afterId, PAGE_SIZE, items -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            loadPending = false;
+            if (version != repository.getDataVersion()) {
+                // A write landed while loading and its event may or may not be in this page; ask again
+                loadNextPage();
+                return;
+            }
+            loadedVersion = version;
+            reachedEnd = items.size() < PAGE_SIZE;
+            List<LocationItem> updated = new ArrayList<>(locationItems.size() + items.size());
+            updated.addAll(locationItems);
+            updated.addAll(items);
+            submitLocations(updated);
+        });
+    }
+
+    private void submitLocations(List<LocationItem> items) {
+        locationItems = items;
+        adapter.submitList(items);
     }
 
     private void startLocationService() {
@@ -192,6 +604,8 @@ public class MainActivity extends AppCompatActivity {
                     return;
                 }
             }
+            // The service requested location updates before the grant and was refused; this re-requests them
+            startLocationService();
             checkBackgroundLocationPermission();
         }
     }
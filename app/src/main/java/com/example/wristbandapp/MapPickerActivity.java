@@ -7,6 +7,7 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
@@ -20,13 +21,17 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.android.libraries.places.api.Places;
 import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.widget.AutocompleteSupportFragment;
 import com.google.android.libraries.places.widget.listener.PlaceSelectionListener;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCallback {
 
@@ -34,6 +39,11 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
     private LatLng selectedLocation = null;
     private String selectedPlaceName = "";
     private ExtendedFloatingActionButton fabSave;
+    private Button btnShapeMode;
+    private Button btnUndoPoint;
+    // In area mode map taps add polygon vertices instead of moving the pin
+    private boolean drawingArea = false;
+    private final List<LatLng> areaPoints = new ArrayList<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,6 +52,15 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
 
         fabSave = findViewById(R.id.fabSave);
         fabSave.setOnClickListener(v -> showSaveDialog());
+        btnShapeMode = findViewById(R.id.btnShapeMode);
+        btnShapeMode.setOnClickListener(v -> toggleShapeMode());
+        btnUndoPoint = findViewById(R.id.btnUndoPoint);
+        btnUndoPoint.setOnClickListener(v -> {
+            if (!areaPoints.isEmpty()) {
+                areaPoints.remove(areaPoints.size() - 1);
+                drawArea();
+            }
+        });
 
         try {
             ApplicationInfo appInfo = getPackageManager().getApplicationInfo(getPackageName(),
@@ -75,7 +94,9 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
                     if (place.getLatLng() != null) {
                         selectedLocation = place.getLatLng();
                         selectedPlaceName = place.getName();
-                        updateMapMarker(selectedLocation, selectedPlaceName);
+                        if (!drawingArea) {
+                            updateMapMarker(selectedLocation, selectedPlaceName);
+                        }
                         mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(selectedLocation, 15f));
                     }
                 }
@@ -95,6 +116,11 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
         mMap.getUiSettings().setZoomControlsEnabled(true);
 
         mMap.setOnMapClickListener(latLng -> {
+            if (drawingArea) {
+                areaPoints.add(latLng);
+                drawArea();
+                return;
+            }
             selectedLocation = latLng;
             selectedPlaceName = "Custom Location";
             updateMapMarker(latLng, selectedPlaceName);
@@ -107,7 +133,40 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
         fabSave.setVisibility(View.VISIBLE);
     }
 
+    private void toggleShapeMode() {
+        drawingArea = !drawingArea;
+        btnShapeMode.setText(drawingArea ? "Drop Pin" : "Draw Area");
+        btnUndoPoint.setVisibility(drawingArea ? View.VISIBLE : View.GONE);
+        areaPoints.clear();
+        if (mMap != null) {
+            mMap.clear();
+        }
+        if (drawingArea) {
+            fabSave.setVisibility(View.GONE);
+        } else if (selectedLocation != null) {
+            updateMapMarker(selectedLocation, selectedPlaceName);
+        }
+    }
+
+    private void drawArea() {
+        mMap.clear();
+        for (LatLng point : areaPoints) {
+            mMap.addMarker(new MarkerOptions().position(point));
+        }
+        if (areaPoints.size() >= 3) {
+            mMap.addPolygon(new PolygonOptions().addAll(areaPoints).strokeWidth(4f).fillColor(0x332196F3)
+                    .strokeColor(0xFF2196F3));
+        } else if (areaPoints.size() == 2) {
+            mMap.addPolyline(new PolylineOptions().addAll(areaPoints).width(4f).color(0xFF2196F3));
+        }
+        fabSave.setVisibility(areaPoints.size() >= 3 ? View.VISIBLE : View.GONE);
+    }
+
     private void showSaveDialog() {
+        if (drawingArea) {
+            showSaveAreaDialog();
+            return;
+        }
         if (selectedLocation == null)
             return;
 
@@ -144,4 +203,42 @@ public class MapPickerActivity extends AppCompatActivity implements OnMapReadyCa
         builder.setNegativeButton("Cancel", null);
         builder.show();
     }
+
+    private void showSaveAreaDialog() {
+        if (areaPoints.size() < 3) {
+            Toast.makeText(this, "Tap at least 3 points to draw an area", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        View view = LayoutInflater.from(this).inflate(R.layout.dialog_save_location, null);
+        EditText etName = view.findViewById(R.id.etName);
+        // The area itself is the boundary
+        view.findViewById(R.id.etRadius).setVisibility(View.GONE);
+
+        etName.setText(selectedPlaceName.isEmpty() ? "Custom Area" : selectedPlaceName);
+
+        builder.setView(view);
+        builder.setPositiveButton("Save", (dialog, which) -> {
+            String name = etName.getText().toString();
+            if (name.isEmpty()) {
+                Toast.makeText(this, "Please fill in all fields", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // lat, lng pairs in drawing order
+            double[] polygon = new double[areaPoints.size() * 2];
+            for (int i = 0; i < areaPoints.size(); i++) {
+                polygon[2 * i] = areaPoints.get(i).latitude;
+                polygon[2 * i + 1] = areaPoints.get(i).longitude;
+            }
+            Intent returnIntent = new Intent();
+            returnIntent.putExtra("name", name);
+            returnIntent.putExtra("polygon", polygon);
+            setResult(RESULT_OK, returnIntent);
+            finish();
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
 }
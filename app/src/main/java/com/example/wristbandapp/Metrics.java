@@ -0,0 +1,179 @@
+package com.example.wristbandapp;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Process-wide counters and fixed-bucket histograms for the location, BLE and database paths.
+// Recording is a handful of atomic adds on arrays allocated up front: no locks and no allocation, so
+// it is safe on every fix and GATT callback. Numbers only become text in dump(), which backs both
+// `adb shell dumpsys activity service com.example.wristbandapp/.LocationService` and the
+// diagnostics dialog in MainActivity.
+public final class Metrics {
+    private static final long[] INTERVAL_BOUNDS_MS = {
+            1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000, 600000 };
+    private static final long[] EVALUATION_BOUNDS_US = { 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+    private static final long[] LATENCY_BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+    // Time between location callbacks, all providers together
+    public static final Histogram FIX_INTERVAL = new Histogram("fix_interval", "ms", INTERVAL_BOUNDS_MS);
+    // GeofenceMonitor.onFix, filter through scheduler update
+    public static final Histogram FENCE_EVALUATION = new Histogram("fence_evaluation", "us", EVALUATION_BOUNDS_US);
+    // From the fix that switched the LED to writeCharacteristic for it
+    public static final Histogram FIX_TO_WRITE = new Histogram("fix_to_write", "ms", LATENCY_BOUNDS_MS);
+    // From writeCharacteristic to onCharacteristicWrite
+    public static final Histogram WRITE_COMPLETION = new Histogram("write_completion", "ms", LATENCY_BOUNDS_MS);
+    // DatabaseHelper reads, query plus cursor walk
+    public static final Histogram DB_QUERY = new Histogram("db_query", "ms", LATENCY_BOUNDS_MS);
+
+    public static final Counter FIXES = new Counter("fixes");
+    public static final Counter FIXES_DROPPED = new Counter("fixes_dropped");
+    public static final Counter GATT_WRITES = new Counter("gatt_writes");
+    public static final Counter GATT_WRITE_FAILURES = new Counter("gatt_write_failures");
+    public static final Counter DISCONNECTS = new Counter("disconnects");
+    public static final Counter RECONNECTS = new Counter("reconnects");
+
+    private static final Histogram[] HISTOGRAMS = { FIX_INTERVAL, FENCE_EVALUATION, FIX_TO_WRITE, WRITE_COMPLETION,
+            DB_QUERY };
+    private static final Counter[] COUNTERS = { FIXES, FIXES_DROPPED, GATT_WRITES, GATT_WRITE_FAILURES, DISCONNECTS,
+            RECONNECTS };
+
+    // elapsedRealtimeNanos of the fix that last switched the LED, 0 once a write has consumed it
+    private static final AtomicLong alertFixNanos = new AtomicLong();
+
+    private Metrics() {
+    }
+
+    public static void markAlertFix(long fixElapsedNanos) {
+        alertFixNanos.set(fixElapsedNanos);
+    }
+
+    // Returns the marked fix time and clears it, or 0 when no LED change is waiting for its write
+    public static long takeAlertFix() {
+        return alertFixNanos.getAndSet(0);
+    }
+
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    public static void dump(PrintWriter pw) {
+        for (Counter counter : COUNTERS) {
+            pw.println(counter.name + ": " + counter.get());
+        }
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.dump(pw);
+        }
+        pw.flush();
+    }
+
+    public static final class Counter {
+        final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    // Counts per bucket of fixed upper bounds, plus one overflow bucket. Percentiles are reported as
+    // the upper bound of the bucket they fall in. A dump racing with record may be off by one sample.
+    public static final class Histogram {
+        final String name;
+        final String unit;
+        private final long[] bounds;
+        private final AtomicLongArray buckets;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String unit, long[] bounds) {
+            this.name = name;
+            this.unit = unit;
+            this.bounds = bounds;
+            this.buckets = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        // Upper bound of the bucket holding the given fraction of samples; max for the overflow bucket
+        public long percentile(double fraction) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        void dump(PrintWriter pw) {
+            long total = count.get();
+            pw.println(name + " (" + unit + "): count=" + total
+                    + (total > 0 ? " mean=" + sum.get() / total + " p50<=" + percentile(0.5)
+                            + " p90<=" + percentile(0.9) + " p99<=" + percentile(0.99) + " max=" + max.get() : ""));
+            if (total == 0) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder("  ");
+            for (int i = 0; i <= bounds.length; i++) {
+                long n = buckets.get(i);
+                if (n == 0) {
+                    continue;
+                }
+                sb.append(i < bounds.length ? "<=" + bounds[i] : ">" + bounds[bounds.length - 1])
+                        .append(':').append(n).append(' ');
+            }
+            pw.println(sb);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.wristbandapp;
+
+import java.util.Random;
+
+// Backoff schedule for getting the saved wristband back after a drop. The first few attempts
+// are direct connects with short, jittered delays; after that we hand over to an autoConnect
+// request so the stack reconnects whenever the wristband is back in range, at no cost to us.
+public class ReconnectPolicy {
+    static final int FAST_ATTEMPTS = 4;
+    static final long BASE_DELAY_MS = 1000;
+    static final long MAX_DELAY_MS = 30000;
+
+    private final Random random;
+
+    public ReconnectPolicy(Random random) {
+        this.random = random;
+    }
+
+    public boolean useAutoConnect(int attempt) {
+        return attempt > FAST_ATTEMPTS;
+    }
+
+    // attempt is 1-based. Equal jitter: half the exponential delay is fixed, half is random,
+    // so several phones/wristbands don't retry in lockstep but we never retry immediately.
+    public long delayMs(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 16);
+        long exp = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << shift);
+        long half = exp / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+}
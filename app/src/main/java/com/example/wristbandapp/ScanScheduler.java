@@ -0,0 +1,191 @@
+package com.example.wristbandapp;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+// Runs at most one BLE scan at a time, stepping down from a short LOW_LATENCY burst to
+// BALANCED and then LOW_POWER windows, and stops at the first match.
+// All methods must be called on the handler's thread.
+public class ScanScheduler {
+    private static final String TAG = "ScanScheduler";
+    private static final TraceLog.Event LOG_IN_PROGRESS = new TraceLog.Event(Log.INFO, TAG,
+            "Scan already in progress (%s)");
+    private static final TraceLog.Event LOG_PHASE = new TraceLog.Event(Log.INFO, TAG, "Started %s scan window (%dms)");
+    private static final TraceLog.Event LOG_NOT_FOUND = new TraceLog.Event(Log.INFO, TAG,
+            "No wristband found after all scan phases. %s");
+    private static final TraceLog.Event LOG_FOUND = new TraceLog.Event(Log.INFO, TAG,
+            "Found wristband in %s phase after %dms (%dms total). %s");
+    private static final TraceLog.Event LOG_FAILED = new TraceLog.Event(Log.ERROR, TAG,
+            "BLE Scan Failed with code: %d");
+
+    public enum Phase {
+        BURST(ScanSettings.SCAN_MODE_LOW_LATENCY, 8000),
+        BALANCED(ScanSettings.SCAN_MODE_BALANCED, 20000),
+        LOW_POWER(ScanSettings.SCAN_MODE_LOW_POWER, 60000);
+
+        final int scanMode;
+        final long durationMs;
+
+        Phase(int scanMode, long durationMs) {
+            this.scanMode = scanMode;
+            this.durationMs = durationMs;
+        }
+    }
+
+    public interface Listener {
+        void onDeviceFound(BluetoothDevice device);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+
+    private BluetoothLeScanner scanner;
+    private List<ScanFilter> filters;
+    private int phaseIndex = -1;
+    private long scanStartedAtMs;
+    private long phaseStartedAtMs;
+
+    // Per-phase discovery stats, indexed by Phase.ordinal()
+    private final int[] scansStarted = new int[Phase.values().length];
+    private final int[] discoveries = new int[Phase.values().length];
+    private final long[] totalTimeToDiscoveryMs = new long[Phase.values().length];
+
+    private final Runnable advanceRunnable = this::advance;
+
+    public ScanScheduler(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    public boolean isScanning() {
+        return phaseIndex >= 0;
+    }
+
+    // Returns false if a scan is already running; that scan keeps going instead of stacking another
+    public boolean start(BluetoothLeScanner scanner, List<ScanFilter> filters) {
+        if (isScanning()) {
+            TraceLog.log(LOG_IN_PROGRESS, Phase.values()[phaseIndex]);
+            return false;
+        }
+        this.scanner = scanner;
+        this.filters = filters;
+        scanStartedAtMs = SystemClock.elapsedRealtime();
+        startPhase(0);
+        return true;
+    }
+
+    public void stop() {
+        if (!isScanning()) {
+            return;
+        }
+        handler.removeCallbacks(advanceRunnable);
+        stopCurrentScan();
+        phaseIndex = -1;
+    }
+
+    // Average time from phase start to discovery, or -1 if that phase never found the wristband
+    public long getAverageTimeToDiscoveryMs(Phase phase) {
+        int i = phase.ordinal();
+        return discoveries[i] == 0 ? -1 : totalTimeToDiscoveryMs[i] / discoveries[i];
+    }
+
+    public String describeStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase).append(": ").append(discoveries[i]).append('/').append(scansStarted[i])
+                    .append(" found, avg ").append(getAverageTimeToDiscoveryMs(phase)).append("ms");
+        }
+        return sb.toString();
+    }
+
+    @SuppressLint("MissingPermission")
+    private void startPhase(int index) {
+        Phase phase = Phase.values()[index];
+        phaseIndex = index;
+        phaseStartedAtMs = SystemClock.elapsedRealtime();
+        scansStarted[index]++;
+
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(phase.scanMode)
+                .build();
+        scanner.startScan(filters, settings, scanCallback);
+        TraceLog.log(LOG_PHASE, phase, phase.durationMs);
+        handler.postDelayed(advanceRunnable, phase.durationMs);
+    }
+
+    private void advance() {
+        if (!isScanning()) {
+            return;
+        }
+        stopCurrentScan();
+        int next = phaseIndex + 1;
+        if (next >= Phase.values().length) {
+            phaseIndex = -1;
+            // describeStats() builds a string, so only call it when the record is kept
+            if (TraceLog.isLoggable(LOG_NOT_FOUND)) {
+                TraceLog.log(LOG_NOT_FOUND, describeStats());
+            }
+            return;
+        }
+        startPhase(next);
+    }
+
+    @SuppressLint("MissingPermission")
+    private void stopCurrentScan() {
+        try {
+            scanner.stopScan(scanCallback);
+        } catch (Exception ignored) {
+            // Adapter may have been turned off mid-scan
+        }
+    }
+
+    private void onFound(BluetoothDevice device) {
+        if (!isScanning()) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        Phase phase = Phase.values()[phaseIndex];
+        discoveries[phaseIndex]++;
+        totalTimeToDiscoveryMs[phaseIndex] += now - phaseStartedAtMs;
+        if (TraceLog.isLoggable(LOG_FOUND)) {
+            TraceLog.log(LOG_FOUND, phase, describeStats(), now - phaseStartedAtMs, now - scanStartedAtMs);
+        }
+        stop();
+        listener.onDeviceFound(device);
+    }
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            BluetoothDevice device = result.getDevice();
+            if (device != null) {
+                handler.post(() -> onFound(device));
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            TraceLog.log(LOG_FAILED, errorCode);
+            handler.post(() -> {
+                if (isScanning()) {
+                    handler.removeCallbacks(advanceRunnable);
+                    advance();
+                }
+            });
+        }
+    };
+}
@@ -0,0 +1,60 @@
+package com.example.wristbandapp;
+
+import java.util.Objects;
+
+// What LocationService shows the UI, as an immutable value. The with* methods return this instance
+// when nothing changed, so the service can tell by identity whether there is anything to push.
+public final class ServiceState {
+    public static final ServiceState INITIAL = new ServiceState(false, false, -1, null, false, 0, 0, Float.NaN, 0);
+
+    public final boolean bleConnected;
+    public final boolean ledOn;
+    // -1 and null while the LED is off
+    public final int activeFenceId;
+    public final String activeFenceName;
+    public final boolean hasFix;
+    public final double lastLatitude;
+    public final double lastLongitude;
+    // NaN when the provider gave none
+    public final float lastAccuracy;
+    // Wall-clock time of the fix (Location.getTime())
+    public final long lastFixTimeMs;
+
+    private ServiceState(boolean bleConnected, boolean ledOn, int activeFenceId, String activeFenceName,
+            boolean hasFix, double lastLatitude, double lastLongitude, float lastAccuracy, long lastFixTimeMs) {
+        this.bleConnected = bleConnected;
+        this.ledOn = ledOn;
+        this.activeFenceId = activeFenceId;
+        this.activeFenceName = activeFenceName;
+        this.hasFix = hasFix;
+        this.lastLatitude = lastLatitude;
+        this.lastLongitude = lastLongitude;
+        this.lastAccuracy = lastAccuracy;
+        this.lastFixTimeMs = lastFixTimeMs;
+    }
+
+    public ServiceState withBleConnected(boolean connected) {
+        if (connected == bleConnected) {
+            return this;
+        }
+        return new ServiceState(connected, ledOn, activeFenceId, activeFenceName, hasFix, lastLatitude,
+                lastLongitude, lastAccuracy, lastFixTimeMs);
+    }
+
+    public ServiceState withLed(boolean on, int fenceId, String fenceName) {
+        // The name can arrive after the id, once the fences have loaded
+        if (on == ledOn && fenceId == activeFenceId && Objects.equals(fenceName, activeFenceName)) {
+            return this;
+        }
+        return new ServiceState(bleConnected, on, fenceId, fenceName, hasFix, lastLatitude, lastLongitude,
+                lastAccuracy, lastFixTimeMs);
+    }
+
+    public ServiceState withFix(double lat, double lng, float accuracy, long timeMs) {
+        if (hasFix && timeMs == lastFixTimeMs && lat == lastLatitude && lng == lastLongitude) {
+            return this;
+        }
+        return new ServiceState(bleConnected, ledOn, activeFenceId, activeFenceName, true, lat, lng, accuracy,
+                timeMs);
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.wristbandapp;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// Logging for the location and BLE paths. Messages are Events declared once as constants, so a call
+// site passes only numbers and existing objects: nothing is concatenated or boxed.
+// Records at or above the ring level are copied into preallocated arrays and only turned into text
+// by dump(). Records at or above the logcat level are also formatted and sent to logcat; that is
+// WARN by default and can be lowered with `adb shell setprop log.tag.Wristband DEBUG` before the
+// service starts.
+// Placeholders: %d prints a number as a long, %f as a double, %s prints the object argument(s).
+public final class TraceLog {
+    private static final String LOGCAT_TAG = "Wristband";
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_NUMBERS = 3;
+
+    private static final int RING_LEVEL = Log.DEBUG;
+    private static volatile int logcatLevel = Log.WARN;
+
+    private static final long[] times = new long[CAPACITY];
+    private static final Event[] events = new Event[CAPACITY];
+    private static final double[] numbers = new double[CAPACITY * MAX_NUMBERS];
+    private static final Object[] firstObjects = new Object[CAPACITY];
+    private static final Object[] secondObjects = new Object[CAPACITY];
+    // Total records ever written; the ring holds the last CAPACITY of them
+    private static long written;
+
+    private TraceLog() {
+    }
+
+    public static final class Event {
+        final int level;
+        final String tag;
+        final String format;
+
+        public Event(int level, String tag, String format) {
+            this.level = level;
+            this.tag = tag;
+            this.format = format;
+        }
+    }
+
+    // Reads the logcat threshold from the log.tag.Wristband system property. isLoggable() defaults to
+    // INFO, so only an explicit DEBUG or VERBOSE lowers it; warnings and errors always reach logcat.
+    public static void refreshLevels() {
+        if (Log.isLoggable(LOGCAT_TAG, Log.VERBOSE)) {
+            logcatLevel = Log.VERBOSE;
+        } else if (Log.isLoggable(LOGCAT_TAG, Log.DEBUG)) {
+            logcatLevel = Log.DEBUG;
+        } else {
+            logcatLevel = Log.WARN;
+        }
+    }
+
+    public static boolean isLoggable(Event event) {
+        return event.level >= RING_LEVEL || event.level >= logcatLevel;
+    }
+
+    public static void log(Event event) {
+        if (isLoggable(event)) {
+            write(event, 0, 0, 0, null, null);
+        }
+    }
+
+    public static void log(Event event, double a) {
+        if (isLoggable(event)) {
+            write(event, a, 0, 0, null, null);
+        }
+    }
+
+    public static void log(Event event, double a, double b) {
+        if (isLoggable(event)) {
+            write(event, a, b, 0, null, null);
+        }
+    }
+
+    public static void log(Event event, double a, double b, double c) {
+        if (isLoggable(event)) {
+            write(event, a, b, c, null, null);
+        }
+    }
+
+    public static void log(Event event, Object first) {
+        if (isLoggable(event)) {
+            write(event, 0, 0, 0, first, null);
+        }
+    }
+
+    public static void log(Event event, Object first, double a) {
+        if (isLoggable(event)) {
+            write(event, a, 0, 0, first, null);
+        }
+    }
+
+    public static void log(Event event, Object first, Object second) {
+        if (isLoggable(event)) {
+            write(event, 0, 0, 0, first, second);
+        }
+    }
+
+    public static void log(Event event, Object first, Object second, double a, double b) {
+        if (isLoggable(event)) {
+            write(event, a, b, 0, first, second);
+        }
+    }
+
+    private static void write(Event event, double a, double b, double c, Object first, Object second) {
+        if (event.level >= RING_LEVEL) {
+            synchronized (TraceLog.class) {
+                int slot = (int) (written & MASK);
+                times[slot] = System.currentTimeMillis();
+                events[slot] = event;
+                numbers[slot * MAX_NUMBERS] = a;
+                numbers[slot * MAX_NUMBERS + 1] = b;
+                numbers[slot * MAX_NUMBERS + 2] = c;
+                firstObjects[slot] = first;
+                secondObjects[slot] = second;
+                written++;
+            }
+        }
+        if (event.level >= logcatLevel) {
+            StringBuilder sb = new StringBuilder();
+            format(sb, event.format, new double[] { a, b, c }, 0, first, second);
+            Throwable throwable = first instanceof Throwable ? (Throwable) first
+                    : second instanceof Throwable ? (Throwable) second : null;
+            if (throwable != null) {
+                sb.append('\n').append(Log.getStackTraceString(throwable));
+            }
+            Log.println(event.level, event.tag, sb.toString());
+        }
+    }
+
+    public static void clear() {
+        synchronized (TraceLog.class) {
+            for (int i = 0; i < CAPACITY; i++) {
+                events[i] = null;
+                firstObjects[i] = null;
+                secondObjects[i] = null;
+            }
+            written = 0;
+        }
+    }
+
+    // Oldest first. Holds the lock while formatting, which only delays writers for the duration of a dump.
+    public static void dump(PrintWriter pw) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder sb = new StringBuilder();
+        synchronized (TraceLog.class) {
+            long start = Math.max(0, written - CAPACITY);
+            pw.println("Log (" + (written - start) + " of " + written + " records):");
+            for (long i = start; i < written; i++) {
+                int slot = (int) (i & MASK);
+                Event event = events[slot];
+                sb.setLength(0);
+                sb.append(timeFormat.format(new Date(times[slot]))).append(' ')
+                        .append("VDIWEA".charAt(Math.min(Math.max(event.level - Log.VERBOSE, 0), 5))).append(' ')
+                        .append(event.tag).append(": ");
+                format(sb, event.format, numbers, slot * MAX_NUMBERS, firstObjects[slot], secondObjects[slot]);
+                pw.println(sb);
+            }
+        }
+        pw.flush();
+    }
+
+    private static void format(StringBuilder sb, String format, double[] values, int offset, Object first,
+            Object second) {
+        int number = 0;
+        int object = 0;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 == format.length()) {
+                sb.append(c);
+                continue;
+            }
+            char spec = format.charAt(++i);
+            if (spec == 'd' && number < MAX_NUMBERS) {
+                sb.append((long) values[offset + number++]);
+            } else if (spec == 'f' && number < MAX_NUMBERS) {
+                sb.append(values[offset + number++]);
+            } else if (spec == 's') {
+                sb.append(object++ == 0 ? first : second);
+            } else {
+                sb.append(c).append(spec);
+            }
+        }
+    }
+}
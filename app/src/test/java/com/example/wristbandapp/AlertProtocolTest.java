@@ -0,0 +1,94 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AlertProtocolTest {
+    @Test
+    public void encodesFramesBehindTheVersionByte() {
+        AlertProtocol.Command[] commands = {
+                AlertProtocol.Command.alertOn(AlertProtocol.PATTERN_PULSE, 200, 300),
+                AlertProtocol.Command.alertOff() };
+        byte[] out = new byte[AlertProtocol.packetSize(commands, 2)];
+
+        int length = AlertProtocol.encode(commands, new int[] { 0xFF, 0x00 }, 2, out);
+
+        assertEquals(11, length);
+        assertArrayEquals(new byte[] {
+                (byte) 0xA1,
+                0x01, (byte) 0xFF, 4, 1, (byte) 200, 0x2C, 0x01,
+                0x02, 0x00, 0 }, out);
+    }
+
+    @Test
+    public void seqsRoundTripAcrossTheWrap() {
+        AlertProtocol.Command[] commands = {
+                AlertProtocol.Command.ping(), AlertProtocol.Command.ping(), AlertProtocol.Command.ping() };
+        byte[] out = new byte[AlertProtocol.packetSize(commands, 3)];
+        AlertProtocol.encode(commands, new int[] { 0xFE, 0xFF, 0x00 }, 3, out);
+        List<Integer> seqs = new ArrayList<>();
+
+        assertTrue(AlertProtocol.decode(out, out.length, (opcode, seq, packet, offset, length) -> seqs.add(seq)));
+
+        // Unsigned, so 0xFF doesn't come back as -1
+        assertEquals(3, seqs.size());
+        assertEquals(0xFE, (int) seqs.get(0));
+        assertEquals(0xFF, (int) seqs.get(1));
+        assertEquals(0x00, (int) seqs.get(2));
+    }
+
+    @Test
+    public void decodesAcks() {
+        byte[] packet = new byte[1 + 2 * 4];
+        packet[0] = (byte) AlertProtocol.VERSION;
+        int offset = 1;
+        offset += AlertProtocol.encodeAck(0xFF, AlertProtocol.ACK_OK, packet, offset);
+        AlertProtocol.encodeAck(0x00, AlertProtocol.ACK_UNKNOWN_OPCODE, packet, offset);
+        List<int[]> acks = new ArrayList<>();
+
+        assertTrue(AlertProtocol.decodeAcks(packet, (seq, status) -> acks.add(new int[] { seq, status })));
+
+        assertEquals(2, acks.size());
+        assertArrayEquals(new int[] { 0xFF, AlertProtocol.ACK_OK }, acks.get(0));
+        assertArrayEquals(new int[] { 0x00, AlertProtocol.ACK_UNKNOWN_OPCODE }, acks.get(1));
+    }
+
+    @Test
+    public void truncatedFrameStopsDecoding() {
+        // Second frame claims a 4-byte payload but only 2 bytes follow
+        byte[] packet = { (byte) 0xA1, 0x02, 5, 0, 0x01, 6, 4, 1, (byte) 200 };
+        List<Integer> seqs = new ArrayList<>();
+
+        assertFalse(AlertProtocol.decode(packet, packet.length, (opcode, seq, buf, offset, length) -> seqs.add(seq)));
+
+        assertEquals(1, seqs.size());
+        assertEquals(5, (int) seqs.get(0));
+    }
+
+    @Test
+    public void wrongVersionIsRejected() {
+        assertFalse(AlertProtocol.decode("ON".getBytes(), 2, (opcode, seq, buf, offset, length) -> {
+        }));
+        assertFalse(AlertProtocol.decode(new byte[0], 0, (opcode, seq, buf, offset, length) -> {
+        }));
+    }
+
+    @Test
+    public void onlyOnAndOffHaveALegacyForm() {
+        assertArrayEquals("ON".getBytes(), AlertProtocol.encodeLegacy(AlertProtocol.Command.alertOn(0, 255, 0)));
+        assertArrayEquals("OFF".getBytes(), AlertProtocol.encodeLegacy(AlertProtocol.Command.alertOff()));
+        assertFalse(AlertProtocol.isLegacyEncodable(AlertProtocol.Command.ping()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pingHasNoLegacyForm() {
+        AlertProtocol.encodeLegacy(AlertProtocol.Command.ping());
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FenceTableTest {
+    private static double north(double meters) {
+        return meters / FenceTable.METERS_PER_DEGREE;
+    }
+
+    private static double east(double lat, double meters) {
+        return meters / (FenceTable.METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+    }
+
+    private static FenceTable table(LocationItem... items) {
+        FenceTable table = new FenceTable(4);
+        for (LocationItem item : items) {
+            table.add(item);
+        }
+        return table;
+    }
+
+    @Test
+    public void circleEdgeIsDecidedExactly() {
+        FenceTable table = table(new LocationItem(1, "Stop", 0, 0, 100));
+
+        // Well inside and well outside are settled by the equirectangular estimate
+        assertTrue(table.contains(0, north(98), 0));
+        assertFalse(table.contains(0, north(102), 0));
+        // Within the tolerance band the haversine distance decides
+        assertTrue(table.contains(0, north(99.9), 0));
+        assertFalse(table.contains(0, north(100.1), 0));
+    }
+
+    @Test
+    public void longitudeIsScaledByLatitude() {
+        FenceTable table = table(new LocationItem(1, "Stop", 60, 10, 500));
+
+        assertTrue(table.contains(0, 60, 10 + east(60, 499)));
+        assertFalse(table.contains(0, 60, 10 + east(60, 501)));
+        // The same offset in degrees is twice as far at the equator
+        assertFalse(table(new LocationItem(1, "Stop", 0, 10, 500)).contains(0, 0, 10 + east(0, 999)));
+    }
+
+    @Test
+    public void marginGrowsTheRadius() {
+        FenceTable table = table(new LocationItem(1, "Stop", 52, 4, 100));
+        double lat = 52 + north(110);
+
+        assertFalse(table.contains(0, lat, 4));
+        assertFalse(table.contains(0, lat, 4, 5f));
+        assertTrue(table.contains(0, lat, 4, 15f));
+    }
+
+    @Test
+    public void circleAcrossTheAntimeridian() {
+        FenceTable table = table(new LocationItem(1, "Date line", 0, 179.9995, 100));
+
+        // 0.0006 degrees, about 67 m, the short way round
+        assertTrue(table.contains(0, 0, -179.9999));
+        assertFalse(table.contains(0, 0, -179.998));
+    }
+
+    @Test
+    public void removedSlotNeverMatches() {
+        FenceTable table = table(new LocationItem(1, "Stop", 0, 0, 100));
+        table.remove(0);
+
+        assertFalse(table.contains(0, 0, 0));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void concavePolygonExcludesItsNotch() {
+        // An L: 200 m square with the north-east 100 m quarter cut away
+        double lat0 = 52;
+        double lng0 = 4;
+        double[] vertices = {
+                lat0, lng0,
+                lat0, lng0 + east(lat0, 200),
+                lat0 + north(100), lng0 + east(lat0, 200),
+                lat0 + north(100), lng0 + east(lat0, 100),
+                lat0 + north(200), lng0 + east(lat0, 100),
+                lat0 + north(200), lng0 };
+        FenceTable table = table(LocationItem.fromPolygon(1, "Yard", vertices));
+
+        assertTrue(table.contains(0, lat0 + north(50), lng0 + east(lat0, 150)));
+        assertTrue(table.contains(0, lat0 + north(150), lng0 + east(lat0, 50)));
+        // Inside the covering circle and bounding box, but in the notch
+        assertFalse(table.contains(0, lat0 + north(150), lng0 + east(lat0, 150)));
+        // 10 m into the notch is within a 15 m margin of the outline
+        assertTrue(table.contains(0, lat0 + north(150), lng0 + east(lat0, 110), 15f));
+        assertFalse(table.contains(0, lat0 - north(20), lng0 + east(lat0, 50), 15f));
+    }
+
+    @Test
+    public void secondsToEntryFollowsTheRay() {
+        FenceTable table = table(new LocationItem(1, "Stop", 0, 0, 100));
+        double lat = -north(1000);
+
+        assertEquals(90, table.secondsToEntry(0, lat, 0, 0, 10), 0.5);
+        assertEquals(Double.POSITIVE_INFINITY, table.secondsToEntry(0, lat, 0, 0, -10), 0);
+        // Passing 200 m to the side misses a 100 m circle
+        assertEquals(Double.POSITIVE_INFINITY, table.secondsToEntry(0, lat, east(0, 200), 0, 10), 0);
+        assertEquals(0, table.secondsToEntry(0, 0, 0, 0, 10), 0);
+    }
+}
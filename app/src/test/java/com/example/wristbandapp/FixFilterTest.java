@@ -0,0 +1,60 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FixFilterTest {
+    @Test
+    public void dropsStaleAndInaccurateFixes() {
+        FixFilter filter = new FixFilter();
+
+        assertFalse(filter.offer(0, FixFilter.MAX_AGE_MS + 1, 52, 4, 10));
+        assertFalse(filter.offer(1000, 1000, 52, 4, FixFilter.MAX_ACCURACY_METERS + 1));
+        assertFalse(filter.offer(1000, 1000, 52, 4, Float.NaN));
+        assertFalse(filter.offer(1000, 1000, 52, 4, 0));
+        assertTrue(filter.offer(1000, 1000, 52, 4, FixFilter.MAX_ACCURACY_METERS));
+    }
+
+    @Test
+    public void mergesFixesWithinTheWindowByAccuracy() {
+        FixFilter filter = new FixFilter();
+        assertTrue(filter.offer(1000, 1000, 52.0, 4, 10));
+
+        // Weights 1/100 and 1/144: 100/244 of the way towards the coarser fix
+        assertTrue(filter.offer(1500, 1500, 52.001, 4, 12));
+
+        assertEquals(52 + 0.001 * 100 / 244, filter.getLatitude(), 1e-9);
+        assertEquals(10, filter.getAccuracy(), 0);
+        assertEquals(1500, filter.getTimeMs());
+    }
+
+    @Test
+    public void mergeThatBarelyMovesIsADuplicate() {
+        FixFilter filter = new FixFilter();
+        assertTrue(filter.offer(1000, 1000, 52, 4, 10));
+
+        assertFalse(filter.offer(1200, 1200, 52, 4, 12));
+    }
+
+    @Test
+    public void muchCoarserFixAddsNothingWithinTheWindow() {
+        FixFilter filter = new FixFilter();
+        assertTrue(filter.offer(1000, 1000, 52, 4, 10));
+
+        assertFalse(filter.offer(1500, 1500, 52.01, 4, 16));
+        assertEquals(52, filter.getLatitude(), 0);
+    }
+
+    @Test
+    public void fixAfterTheWindowReplacesThePosition() {
+        FixFilter filter = new FixFilter();
+        assertTrue(filter.offer(1000, 1000, 52, 4, 10));
+
+        assertTrue(filter.offer(1000 + FixFilter.MERGE_WINDOW_MS + 1, 5000, 52.01, 4, 50));
+        assertEquals(52.01, filter.getLatitude(), 0);
+        assertEquals(50, filter.getAccuracy(), 0);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Handler is the framework stub here, so nothing posted ever runs; timeouts are fired by hand
+public class GattCommandQueueTest {
+    private final List<int[]> writes = new ArrayList<>();
+    private final List<Integer> opcodes = new ArrayList<>();
+    private GattCommandQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new GattCommandQueue(new Handler(), batch -> {
+            int[] seqs = new int[batch.size()];
+            for (int i = 0; i < seqs.length; i++) {
+                seqs[i] = batch.get(i).seq;
+                opcodes.add(batch.get(i).body.opcode);
+            }
+            writes.add(seqs);
+            return true;
+        });
+    }
+
+    private int[] lastWrite() {
+        return writes.get(writes.size() - 1);
+    }
+
+    @Test
+    public void writesOneCommandAtATimeWithoutAcks() {
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+
+        assertEquals(1, writes.size());
+        queue.onWriteComplete(true);
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+
+    @Test
+    public void queuedCommandsCoalesceByKey() {
+        queue.setReady(true);
+        queue.enqueue("LED", AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.enqueue("LED", AlertProtocol.Command.alertOff());
+        queue.enqueue("LED", AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.onWriteComplete(true);
+
+        // The OFF in between was replaced while it waited
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[] { 2 }, lastWrite());
+    }
+
+    @Test
+    public void lateCompletionAfterTimeoutIsIgnored() {
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+
+        queue.onWriteTimeout();
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[] { 0 }, lastWrite());
+
+        // Belongs to the abandoned first attempt, not the resend
+        queue.onWriteComplete(true);
+        assertEquals(2, writes.size());
+
+        queue.onWriteComplete(true);
+        assertEquals(3, writes.size());
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+
+    @Test
+    public void commandIsDroppedAfterMaxAttempts() {
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+
+        for (int i = 1; i < GattCommandQueue.MAX_ATTEMPTS; i++) {
+            queue.onWriteTimeout();
+            assertArrayEquals(new int[] { 0 }, lastWrite());
+        }
+        queue.onWriteTimeout();
+
+        assertEquals(GattCommandQueue.MAX_ATTEMPTS + 1, writes.size());
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+
+    @Test
+    public void seqWrapsAfter0xFF() {
+        // Room for one frame per write
+        queue.setProtocol(true, 4);
+        queue.setReady(true);
+        for (int i = 0; i < 256; i++) {
+            queue.enqueue(null, AlertProtocol.Command.alertOff());
+            assertArrayEquals(new int[] { i }, lastWrite());
+            queue.onAck(i, AlertProtocol.ACK_OK);
+        }
+
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+        assertArrayEquals(new int[] { 0 }, lastWrite());
+        queue.onAck(0, AlertProtocol.ACK_OK);
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+
+    @Test
+    public void ackCompletesOnlyItsOwnFrame() {
+        queue.setProtocol(true, 20);
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+        queue.enqueue(null, AlertProtocol.Command.ping());
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+
+        assertArrayEquals(new int[] { 0, 1, 2 }, writes.get(0));
+        // A successful write is not an ack
+        queue.onWriteComplete(true);
+        queue.onAck(7, AlertProtocol.ACK_OK);
+        queue.onAck(0, AlertProtocol.ACK_OK);
+        queue.onAck(2, AlertProtocol.ACK_OK);
+        assertEquals(1, writes.size());
+
+        // Rejected frames finish too; resending them wouldn't help
+        queue.onAck(1, AlertProtocol.ACK_UNKNOWN_OPCODE);
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[] { 3 }, lastWrite());
+    }
+
+    @Test
+    public void timeoutResendsOnlyUnackedFrames() {
+        queue.setProtocol(true, 20);
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+        queue.enqueue(null, AlertProtocol.Command.ping());
+        queue.setReady(true);
+
+        queue.onAck(0, AlertProtocol.ACK_OK);
+        queue.onWriteTimeout();
+
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+
+    @Test
+    public void legacyFirmwareNeverGetsAPing() {
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.ping());
+        queue.enqueue(null, AlertProtocol.Command.alertOn(0, 255, 0));
+
+        assertEquals(1, writes.size());
+        assertEquals(AlertProtocol.OP_ALERT_ON, (int) opcodes.get(0));
+    }
+
+    @Test
+    public void disconnectRequeuesTheWriteInFlight() {
+        queue.setReady(true);
+        queue.enqueue(null, AlertProtocol.Command.alertOn(0, 255, 0));
+        queue.enqueue(null, AlertProtocol.Command.alertOff());
+
+        queue.setReady(false);
+        queue.setReady(true);
+        assertEquals(2, writes.size());
+        assertArrayEquals(new int[] { 0 }, lastWrite());
+
+        // No callback comes for the write lost with the link, so this one is the resend's
+        queue.onWriteComplete(true);
+        assertArrayEquals(new int[] { 1 }, lastWrite());
+    }
+}
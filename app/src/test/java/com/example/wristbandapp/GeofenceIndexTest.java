@@ -0,0 +1,80 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GeofenceIndexTest {
+    private static double north(double meters) {
+        return meters / FenceTable.METERS_PER_DEGREE;
+    }
+
+    @Test
+    public void fenceIsFoundFromEveryCellItTouches() {
+        GeofenceIndex index = new GeofenceIndex();
+        // Straddles the cell boundary at 52.01
+        index.add(new LocationItem(7, "Border", 52.01, 4.005, 300));
+        int[] out = new int[4];
+
+        assertEquals(1, index.queryContaining(52.01 - north(200), 4.005, out));
+        assertEquals(7, index.item(out[0]).id);
+        assertEquals(1, index.queryContaining(52.01 + north(200), 4.005, out));
+        assertEquals(0, index.queryContaining(52.01 + north(400), 4.005, out));
+    }
+
+    @Test
+    public void marginReachesFencesInNeighbouringCells() {
+        GeofenceIndex index = new GeofenceIndex();
+        index.add(new LocationItem(1, "North", 52.0195, 4.005, 50));
+        int[] out = new int[4];
+        // About 130 m south of the centre, in the cell below the fence's own
+        double lat = 52.0195 - north(130);
+
+        assertEquals(0, index.queryContaining(lat, 4.005, 0f, out));
+        assertEquals(1, index.queryContaining(lat, 4.005, 100f, out));
+    }
+
+    @Test
+    public void removedFenceIsNoLongerFound() {
+        GeofenceIndex index = new GeofenceIndex();
+        index.add(new LocationItem(1, "Stop", 52, 4, 100));
+        int[] out = new int[4];
+
+        assertTrue(index.remove(1));
+        assertFalse(index.hasFence(1));
+        assertEquals(0, index.queryContaining(52, 4, out));
+        assertFalse(index.remove(1));
+    }
+
+    @Test
+    public void oversizedFenceIsCheckedEverywhere() {
+        GeofenceIndex index = new GeofenceIndex();
+        index.add(new LocationItem(1, "City", 52, 4, 20000));
+        int[] out = new int[4];
+
+        assertEquals(1, index.queryContaining(52 + north(19000), 4, out));
+        assertEquals(0, index.queryContaining(52 + north(21000), 4, out));
+    }
+
+    @Test
+    public void arrivalsAreSoonestFirst() {
+        GeofenceIndex index = new GeofenceIndex();
+        // Along a line north, inserted out of order, plus one behind the user
+        index.add(new LocationItem(3, "Far", 52 + north(3000), 4, 50));
+        index.add(new LocationItem(1, "Near", 52 + north(1000), 4, 50));
+        index.add(new LocationItem(2, "Middle", 52 + north(2000), 4, 50));
+        index.add(new LocationItem(4, "Behind", 52 - north(500), 4, 50));
+        int[] out = new int[2];
+        double[] seconds = new double[2];
+
+        int found = index.queryArrivals(52, 4, 5000f, 0, 10, out, seconds);
+
+        assertEquals(2, found);
+        assertEquals(1, index.item(out[0]).id);
+        assertEquals(2, index.item(out[1]).id);
+        assertEquals(95, seconds[0], 0.5);
+        assertEquals(195, seconds[1], 0.5);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LocationNameIndexTest {
+    private static int[] search(LocationNameIndex index, String query, int limit) {
+        int[] out = new int[limit];
+        return Arrays.copyOf(out, index.search(query, out));
+    }
+
+    private static LocationNameIndex index(String... names) {
+        LocationNameIndex index = new LocationNameIndex();
+        for (int i = 0; i < names.length; i++) {
+            index.add(i + 1, names[i]);
+        }
+        return index;
+    }
+
+    @Test
+    public void matchesSubstringsIgnoringCase() {
+        LocationNameIndex index = index("Central Station", "Station Road", "Harbour", "Old STATION");
+
+        assertArrayEquals(new int[] { 2, 4, 1 }, search(index, "station", 10));
+        assertArrayEquals(new int[] { 3 }, search(index, "  ARBO ", 10));
+        assertArrayEquals(new int[0], search(index, "bus", 10));
+    }
+
+    @Test
+    public void everyTrigramOfTheQueryMustMatch() {
+        // Both contain "sta" and "tio", only one has them in order
+        LocationNameIndex index = index("Station", "Tio sta");
+
+        assertArrayEquals(new int[] { 1 }, search(index, "statio", 10));
+    }
+
+    @Test
+    public void shortQueriesScanNames() {
+        LocationNameIndex index = index("Oak", "Kiosk", "Park");
+
+        assertArrayEquals(new int[] { 2, 1, 3 }, search(index, "k", 10));
+        assertArrayEquals(new int[] { 3 }, search(index, "ar", 10));
+        assertArrayEquals(new int[0], search(index, "", 10));
+    }
+
+    @Test
+    public void ranksExactThenPrefixThenWordStartThenAnywhere() {
+        LocationNameIndex index = index("Bakery Parkside", "Park Lane", "Old Park", "Park", "Sparks");
+
+        assertArrayEquals(new int[] { 4, 2, 3, 1, 5 }, search(index, "park", 10));
+    }
+
+    @Test
+    public void bestMatchesSurviveTheLimit() {
+        LocationNameIndex index = new LocationNameIndex();
+        // Plenty of weak matches ahead of the strong ones in slot order
+        for (int id = 1; id <= 50; id++) {
+            index.add(id, "Upper Gardens " + id);
+        }
+        index.add(100, "Garden Centre");
+        index.add(101, "Garden");
+
+        assertArrayEquals(new int[] { 101, 100 }, search(index, "garden", 2));
+        assertArrayEquals(new int[] { 101 }, search(index, "gar", 1));
+    }
+
+    @Test
+    public void laterWordStartCountsEvenAfterAMidWordMatch() {
+        // "an" first appears inside "Sand", then at the start of "Anchor"
+        LocationNameIndex index = index("Sand Anchor", "Sandbank");
+
+        assertArrayEquals(new int[] { 1, 2 }, search(index, "an", 10));
+    }
+
+    @Test
+    public void repeatedTrigramListsTheNameOnce() {
+        LocationNameIndex index = index("Banana Bay");
+
+        assertArrayEquals(new int[] { 1 }, search(index, "ana", 10));
+    }
+
+    @Test
+    public void renamedAndRemovedNamesAreNotFound() {
+        LocationNameIndex index = index("Market", "Market Hall");
+        index.add(1, "Museum");
+        index.remove(2);
+
+        assertArrayEquals(new int[0], search(index, "market", 10));
+        assertArrayEquals(new int[] { 1 }, search(index, "muse", 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void survivesCompaction() {
+        LocationNameIndex index = new LocationNameIndex();
+        for (int id = 1; id <= 500; id++) {
+            index.add(id, "Stop " + id);
+        }
+        for (int id = 1; id <= 400; id++) {
+            index.remove(id);
+        }
+
+        assertEquals(100, index.size());
+        assertArrayEquals(new int[] { 450 }, search(index, "stop 450", 10));
+        assertEquals(100, search(index, "stop", 1000).length);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.wristbandapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic fences and fixes spread over a 1 x 1 degree area (roughly 110 x 70 km around London),
+// so runs with different fence counts differ only in density.
+final class BenchmarkData {
+    static final double MIN_LAT = 51.0;
+    static final double MIN_LNG = -0.6;
+    static final double SPAN_DEGREES = 1.0;
+    static final int FIX_COUNT = 4096;
+
+    private BenchmarkData() {
+    }
+
+    static List<LocationItem> fences(int count, long seed) {
+        Random random = new Random(seed);
+        List<LocationItem> fences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fences.add(new LocationItem(i + 1, "Stop " + (i + 1),
+                    MIN_LAT + random.nextDouble() * SPAN_DEGREES,
+                    MIN_LNG + random.nextDouble() * SPAN_DEGREES,
+                    30f + random.nextFloat() * 270f));
+        }
+        return fences;
+    }
+
+    // Interleaved lat/lng pairs of a continuous drive from the centre of the area: speedMps between
+    // fixes intervalMs apart, heading drifting a little each step and turning back at the edges.
+    // The second half retraces the first, so cycling through the array never teleports.
+    static double[] track(long seed, double speedMps, long intervalMs) {
+        Random random = new Random(seed);
+        double[] track = new double[FIX_COUNT * 2];
+        double lat = MIN_LAT + SPAN_DEGREES / 2;
+        double lng = MIN_LNG + SPAN_DEGREES / 2;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        double stepMeters = speedMps * intervalMs / 1000.0;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        int half = FIX_COUNT / 2;
+        for (int i = 0; i < half; i++) {
+            track[2 * i] = lat;
+            track[2 * i + 1] = lng;
+            heading += random.nextGaussian() * 0.1;
+            double nextLat = lat + stepMeters * Math.cos(heading) / FenceTable.METERS_PER_DEGREE;
+            double nextLng = lng + stepMeters * Math.sin(heading) / (FenceTable.METERS_PER_DEGREE * cosLat);
+            if (nextLat < MIN_LAT || nextLat > MIN_LAT + SPAN_DEGREES
+                    || nextLng < MIN_LNG || nextLng > MIN_LNG + SPAN_DEGREES) {
+                heading += Math.PI;
+                continue;
+            }
+            lat = nextLat;
+            lng = nextLng;
+        }
+        for (int i = half; i < FIX_COUNT; i++) {
+            int mirror = FIX_COUNT - 1 - i;
+            track[2 * i] = track[2 * mirror];
+            track[2 * i + 1] = track[2 * mirror + 1];
+        }
+        return track;
+    }
+
+    // Interleaved lat/lng pairs of GPS noise around one spot, as a user asleep at home reports
+    static double[] stationary(long seed, double noiseMeters) {
+        Random random = new Random(seed);
+        double lat = MIN_LAT + SPAN_DEGREES / 2;
+        double lng = MIN_LNG + SPAN_DEGREES / 2;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double[] fixes = new double[FIX_COUNT * 2];
+        for (int i = 0; i < FIX_COUNT; i++) {
+            fixes[2 * i] = lat + random.nextGaussian() * noiseMeters / FenceTable.METERS_PER_DEGREE;
+            fixes[2 * i + 1] = lng + random.nextGaussian() * noiseMeters / (FenceTable.METERS_PER_DEGREE * cosLat);
+        }
+        return fixes;
+    }
+
+    // Interleaved lat/lng pairs scattered over the whole area, for the stateless index queries only:
+    // consecutive points are tens of km apart, which no real user produces
+    static double[] fixes(long seed) {
+        Random random = new Random(seed);
+        double[] fixes = new double[FIX_COUNT * 2];
+        for (int i = 0; i < FIX_COUNT; i++) {
+            fixes[2 * i] = MIN_LAT + random.nextDouble() * SPAN_DEGREES;
+            fixes[2 * i + 1] = MIN_LNG + random.nextDouble() * SPAN_DEGREES;
+        }
+        return fixes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.wristbandapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The per-fix path: what LocationService does for every accepted location update
+@State(Scope.Thread)
+public class FenceEvaluationBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int fenceCount;
+
+    // Urban driving, sampled at the scheduler's fastest interval
+    private static final float MOVING_SPEED_MPS = 13.9f;
+    private static final long FIX_INTERVAL_MS = 5000;
+
+    private GeofenceSnapshot snapshot;
+    private GeofenceMonitor monitor;
+    private double[] fixes;
+    private double[] stationaryFixes;
+    private double[] movingFixes;
+    private final int[] out = new int[8];
+    private int next;
+    private long clockMs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = new GeofenceSnapshot(0, BenchmarkData.fences(fenceCount, 42));
+        fixes = BenchmarkData.fixes(7);
+        stationaryFixes = BenchmarkData.stationary(7, 10);
+        movingFixes = BenchmarkData.track(7, MOVING_SPEED_MPS, FIX_INTERVAL_MS);
+        monitor = new GeofenceMonitor(new GeofenceMonitor.Listener() {
+            @Override
+            public void onEnter(LocationItem fence, double lat, double lng, float accuracy) {
+            }
+
+            @Override
+            public void onPredictedArrival(LocationItem fence, float secondsToEntry, double lat, double lng,
+                    float speedMps) {
+            }
+
+            @Override
+            public void onExit(int fenceId, double lat, double lng, float accuracy) {
+            }
+
+            @Override
+            public void onLedChanged(boolean on, int fenceId) {
+            }
+
+            @Override
+            public void onScheduleChanged() {
+            }
+        });
+    }
+
+    private int nextFix() {
+        next = (next + 2) & (fixes.length - 1);
+        return next;
+    }
+
+    @Benchmark
+    public int queryContaining() {
+        int i = nextFix();
+        return snapshot.queryContaining(fixes[i], fixes[i + 1], 0f, out);
+    }
+
+    // With the LED on the query grows every fence by the fix accuracy
+    @Benchmark
+    public int queryContainingWithMargin() {
+        int i = nextFix();
+        return snapshot.queryContaining(fixes[i], fixes[i + 1], 25f, out);
+    }
+
+    // Drives the location request interval; searches outward until it finds a fence edge
+    @Benchmark
+    public double nearestEdgeDistance() {
+        int i = nextFix();
+        return snapshot.nearestEdgeDistance(fixes[i], fixes[i + 1], LocationScheduler.FAR_DISTANCE_METERS);
+    }
+
+    // Filter + containment + scheduler update, exactly as the service runs it. Lying still, so
+    // there is no velocity and no arrival prediction.
+    @Benchmark
+    public boolean monitorOnFixStationary() {
+        int i = nextFix();
+        clockMs += FIX_INTERVAL_MS;
+        return monitor.onFix(snapshot, clockMs, clockMs, stationaryFixes[i], stationaryFixes[i + 1], 10f, 0f);
+    }
+
+    // Same, driving along a continuous track, so every fix also predicts arrivals within reach
+    @Benchmark
+    public boolean monitorOnFixMoving() {
+        int i = nextFix();
+        clockMs += FIX_INTERVAL_MS;
+        return monitor.onFix(snapshot, clockMs, clockMs, movingFixes[i], movingFixes[i + 1], 10f,
+                MOVING_SPEED_MPS);
+    }
+}
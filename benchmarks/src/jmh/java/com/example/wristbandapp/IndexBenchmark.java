@@ -0,0 +1,55 @@
+package com.example.wristbandapp;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Cost of (re)building the service's snapshot and of the copy-on-write deltas applied per edit
+@State(Scope.Thread)
+public class IndexBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int fenceCount;
+
+    private List<LocationItem> fences;
+    private GeofenceSnapshot snapshot;
+    private GeofenceIndex index;
+    private LocationItem extra;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fences = BenchmarkData.fences(fenceCount, 42);
+        snapshot = new GeofenceSnapshot(0, fences);
+        index = new GeofenceIndex();
+        for (LocationItem fence : fences) {
+            index.add(fence);
+        }
+        extra = new LocationItem(fenceCount + 1, "Extra", 51.5, -0.1, 100f);
+    }
+
+    @Benchmark
+    public GeofenceSnapshot build() {
+        return new GeofenceSnapshot(0, fences);
+    }
+
+    @Benchmark
+    public GeofenceSnapshot insertDelta() {
+        return snapshot.withLocation(1, extra);
+    }
+
+    @Benchmark
+    public GeofenceSnapshot deleteDelta() {
+        return snapshot.withoutLocation(1, fenceCount / 2 + 1);
+    }
+
+    // The index's own update cost, without the snapshot's copy
+    @Benchmark
+    public boolean addRemoveInPlace() {
+        index.add(extra);
+        return index.remove(extra.id);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.wristbandapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+// BLE command encoding as done for every GATT write, and decoding of the firmware's acks
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+    private final AlertProtocol.Command on = AlertProtocol.Command.alertOn(AlertProtocol.PATTERN_PULSE, 200, 30);
+    private final AlertProtocol.Command[] batch = {
+            AlertProtocol.Command.alertOn(AlertProtocol.PATTERN_PULSE, 200, 30),
+            AlertProtocol.Command.ping(),
+            AlertProtocol.Command.alertOff() };
+    private final int[] seqs = { 1, 2, 3 };
+    private final byte[] packet = new byte[20];
+    private final byte[] acks = new byte[1 + 3 * 4];
+    private final AlertProtocol.AckHandler ackSink = (seq, status) -> {
+    };
+
+    public ProtocolBenchmark() {
+        int offset = 0;
+        acks[offset++] = (byte) AlertProtocol.VERSION;
+        for (int seq = 1; seq <= 3; seq++) {
+            offset += AlertProtocol.encodeAck(seq, AlertProtocol.ACK_OK, acks, offset);
+        }
+    }
+
+    @Benchmark
+    public int encodeSingle() {
+        return AlertProtocol.encode(batch, seqs, 1, packet);
+    }
+
+    @Benchmark
+    public int encodeBatch() {
+        return AlertProtocol.encode(batch, seqs, batch.length, packet);
+    }
+
+    // What BleManager.writeBatch allocates per write: a right-sized packet
+    @Benchmark
+    public byte[] encodeAllocating() {
+        byte[] out = new byte[AlertProtocol.packetSize(batch, batch.length)];
+        AlertProtocol.encode(batch, seqs, batch.length, out);
+        return out;
+    }
+
+    @Benchmark
+    public void encodeLegacy(Blackhole blackhole) {
+        blackhole.consume(AlertProtocol.encodeLegacy(on));
+    }
+
+    @Benchmark
+    public boolean decodeAcks() {
+        return AlertProtocol.decodeAcks(acks, ackSink);
+    }
+}
@@ -8,6 +8,7 @@
 
 BLEServer *pServer = NULL;
 BLECharacteristic *pRxCharacteristic;
+BLECharacteristic *pTxCharacteristic;
 bool deviceConnected = false;
 bool oldDeviceConnected = false;
 
@@ -15,6 +16,167 @@ bool oldDeviceConnected = false;
 // https://www.uuidgenerator.net/
 #define SERVICE_UUID           "6E400001-B5A3-F393-E0A9-E50E24DCCA9E"
 #define CHARACTERISTIC_UUID_RX "6E400002-B5A3-F393-E0A9-E50E24DCCA9E"
+#define CHARACTERISTIC_UUID_TX "6E400003-B5A3-F393-E0A9-E50E24DCCA9E"
+
+// Binary alert protocol, must match AlertProtocol.java in the app.
+// Packet: [VERSION] then frames of [opcode][seq][length][payload...]
+#define PROTO_VERSION      0xA1
+#define PROTO_HEADER_SIZE  3
+#define OP_ALERT_ON        0x01
+#define OP_ALERT_OFF       0x02
+#define OP_PING            0x03
+#define OP_ACK             0x80
+#define ACK_OK             0
+#define ACK_BAD_FRAME      1
+#define ACK_UNKNOWN_OPCODE 2
+#define PATTERN_CONTINUOUS 0
+#define PATTERN_PULSE      1
+#define PATTERN_RAMP       2
+// A notification carries 20 bytes at the default ATT MTU: the version byte and four 4-byte acks.
+// Packets with more frames than that are acked over several notifications.
+#define MAX_ACKS_PER_NOTIFY 4
+
+// Current alert, driven from loop()
+bool alertActive = false;
+uint8_t alertPattern = PATTERN_CONTINUOUS;
+uint8_t alertIntensity = 255;
+unsigned long alertStartedAt = 0;
+unsigned long alertDurationMs = 0; // 0 = until OFF
+
+// The app resends a whole packet with the same seqs when an ack gets lost, so every frame of it,
+// not just the last, has to be recognised and acked without being applied twice. Seqs wrap at 256;
+// the window only has to cover the frames that can be awaiting an ack, far fewer than that.
+#define SEQ_WINDOW 32
+int recentSeqs[SEQ_WINDOW];
+int recentSeqNext = 0;
+
+void resetSeqs() {
+  for (int i = 0; i < SEQ_WINDOW; i++) recentSeqs[i] = -1;
+  recentSeqNext = 0;
+}
+
+bool seqSeen(uint8_t seq) {
+  for (int i = 0; i < SEQ_WINDOW; i++) {
+    if (recentSeqs[i] == (int) seq) return true;
+  }
+  return false;
+}
+
+void rememberSeq(uint8_t seq) {
+  recentSeqs[recentSeqNext] = seq;
+  recentSeqNext = (recentSeqNext + 1) % SEQ_WINDOW;
+}
+
+void startAlert(uint8_t pattern, uint8_t intensity, uint16_t durationSec) {
+  alertActive = true;
+  alertPattern = pattern;
+  alertIntensity = intensity;
+  alertStartedAt = millis();
+  alertDurationMs = (unsigned long) durationSec * 1000UL;
+}
+
+void stopAlert() {
+  alertActive = false;
+  analogWrite(LED_PIN, 0);
+}
+
+uint8_t applyFrame(uint8_t opcode, uint8_t seq, const uint8_t *payload, uint8_t length) {
+  // Only frames that were applied are remembered, so a rejected one can still be sent again fixed
+  if (seqSeen(seq)) return ACK_OK;
+
+  switch (opcode) {
+    case OP_ALERT_ON:
+      if (length < 4) return ACK_BAD_FRAME;
+      rememberSeq(seq);
+      Serial.println("Alert ON");
+      startAlert(payload[0], payload[1], payload[2] | (payload[3] << 8));
+      return ACK_OK;
+    case OP_ALERT_OFF:
+      rememberSeq(seq);
+      Serial.println("Alert OFF");
+      stopAlert();
+      return ACK_OK;
+    case OP_PING:
+      return ACK_OK;
+    default:
+      return ACK_UNKNOWN_OPCODE;
+  }
+}
+
+void sendAcks(uint8_t *acks, size_t ackLength) {
+  if (deviceConnected) {
+    pTxCharacteristic->setValue(acks, ackLength);
+    pTxCharacteristic->notify();
+  }
+}
+
+void handlePacket(const uint8_t *data, size_t length) {
+  uint8_t acks[1 + MAX_ACKS_PER_NOTIFY * (PROTO_HEADER_SIZE + 1)];
+  size_t ackLength = 0;
+  acks[ackLength++] = PROTO_VERSION;
+
+  size_t pos = 1;
+  int frames = 0;
+  while (pos + PROTO_HEADER_SIZE <= length) {
+    uint8_t opcode = data[pos];
+    uint8_t seq = data[pos + 1];
+    uint8_t payloadLength = data[pos + 2];
+    size_t payloadOffset = pos + PROTO_HEADER_SIZE;
+
+    uint8_t status;
+    if (payloadOffset + payloadLength > length) {
+      // Truncated frame: reject it and stop, the rest of the packet can't be trusted
+      status = ACK_BAD_FRAME;
+      pos = length;
+    } else {
+      status = applyFrame(opcode, seq, data + payloadOffset, payloadLength);
+      pos = payloadOffset + payloadLength;
+    }
+
+    acks[ackLength++] = OP_ACK;
+    acks[ackLength++] = seq;
+    acks[ackLength++] = 1;
+    acks[ackLength++] = status;
+    frames++;
+
+    if (frames == MAX_ACKS_PER_NOTIFY) {
+      sendAcks(acks, ackLength);
+      ackLength = 1;
+      frames = 0;
+    }
+  }
+
+  if (frames > 0) {
+    sendAcks(acks, ackLength);
+  }
+}
+
+// Called every loop() pass to render the current pattern on the LED
+void updateAlert() {
+  if (!alertActive) return;
+
+  unsigned long elapsed = millis() - alertStartedAt;
+  if (alertDurationMs > 0 && elapsed >= alertDurationMs) {
+    stopAlert();
+    return;
+  }
+
+  uint8_t level;
+  switch (alertPattern) {
+    case PATTERN_PULSE:
+      level = (elapsed / 500) % 2 == 0 ? alertIntensity : 0;
+      break;
+    case PATTERN_RAMP: {
+      unsigned long phase = elapsed % 2000;
+      level = (uint8_t) ((unsigned long) alertIntensity * phase / 2000);
+      break;
+    }
+    default:
+      level = alertIntensity;
+      break;
+  }
+  analogWrite(LED_PIN, level);
+}
 
 class MyServerCallbacks: public BLEServerCallbacks {
     void onConnect(BLEServer* pServer) {
@@ -25,7 +187,8 @@ class MyServerCallbacks: public BLEServerCallbacks {
     void onDisconnect(BLEServer* pServer) {
       deviceConnected = false;
       Serial.println("Device disconnected");
-      digitalWrite(LED_PIN, LOW); // Turn off LED when app disconnects
+      stopAlert(); // Turn off LED when app disconnects
+      resetSeqs();
     }
 };
 
@@ -34,6 +197,13 @@ class MyCallbacks: public BLECharacteristicCallbacks {
       String rxValue = pCharacteristic->getValue().c_str();
 
       if (rxValue.length() > 0) {
+        const uint8_t *data = pCharacteristic->getData();
+        size_t length = pCharacteristic->getLength();
+        if (data[0] == PROTO_VERSION) {
+          handlePacket(data, length);
+          return;
+        }
+
         Serial.println("*********");
         Serial.print("Received Value: ");
         for (int i = 0; i < rxValue.length(); i++)
@@ -41,12 +211,13 @@ class MyCallbacks: public BLECharacteristicCallbacks {
         Serial.println();
         Serial.println("*********");
 
+        // Legacy text commands from older app versions
         if (rxValue == "ON") {
           Serial.println("Turning LED ON");
-          digitalWrite(LED_PIN, HIGH);
+          startAlert(PATTERN_CONTINUOUS, 255, 0);
         } else if (rxValue == "OFF") {
           Serial.println("Turning LED OFF");
-          digitalWrite(LED_PIN, LOW);
+          stopAlert();
         }
       }
     }
@@ -59,6 +230,7 @@ void setup() {
 
   pinMode(LED_PIN, OUTPUT);
   digitalWrite(LED_PIN, LOW);
+  resetSeqs();
 
   Serial.println("Initializing BLE Device...");
   // Initialize the Bluetooth LE environment
@@ -82,6 +254,13 @@ void setup() {
 
   pRxCharacteristic->setCallbacks(new MyCallbacks());
 
+  // Acks for the binary protocol go back over notifications
+  pTxCharacteristic = pService->createCharacteristic(
+                       CHARACTERISTIC_UUID_TX,
+                       BLECharacteristic::PROPERTY_NOTIFY
+                     );
+  pTxCharacteristic->addDescriptor(new BLE2902());
+
   Serial.println("Starting BLE Service...");
   // Start the service
   pService->start();
@@ -102,6 +281,8 @@ void setup() {
 }
 
 void loop() {
+    updateAlert();
+
     // disconnecting
     if (!deviceConnected && oldDeviceConnected) {
         delay(500); // give the bluetooth stack the chance to get things ready
@@ -0,0 +1,369 @@
+package com.example.wristbandapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Replays a recorded track through GeofenceMonitor as fast as the CPU allows. The track is taken as
+// ground truth. Fixes are only delivered as often as LocationScheduler asks, like the real location
+// request, with optional position noise. The report covers detection delay per fence visit, false
+// enter/exit events and how many BLE commands the service would have sent.
+//
+//   gradle :simulator:run --args="--track walk.gpx --fences stops.csv --noise 15 --max-delay-ms 60000"
+//
+// Exits with 1 when a --max-* limit is exceeded, so CI can gate on it.
+public class TraceReplay implements GeofenceMonitor.Listener {
+    public static final class Options {
+        // Standard deviation of the noise added to each delivered fix, in meters
+        public double noiseMeters = 0;
+        // Used when a track point has no accuracy of its own
+        public float defaultAccuracy = 10f;
+        // false delivers every track point, ignoring the scheduler
+        public boolean honourSchedule = true;
+        public long seed = 1;
+        public long enterDwellMs = GeofenceMonitor.DEFAULT_ENTER_DWELL_MS;
+        public long exitDwellMs = GeofenceMonitor.DEFAULT_EXIT_DWELL_MS;
+        public float exitHysteresisMeters = GeofenceMonitor.DEFAULT_EXIT_HYSTERESIS_METERS;
+        // Predictive alert lead time; 0 alerts on arrival only
+        public long leadTimeMs = 0;
+    }
+
+    // One stretch of the track spent inside a fence
+    public static final class Visit {
+        public final LocationItem fence;
+        public final long startMs;
+        public long endMs;
+        // -1 while the LED hasn't come on during the visit; before startMs when a prediction fired early
+        public long detectedMs = -1;
+        public boolean detected;
+
+        Visit(LocationItem fence, long startMs) {
+            this.fence = fence;
+            this.startMs = startMs;
+        }
+
+        public long delayMs() {
+            return detected ? detectedMs - startMs : -1;
+        }
+    }
+
+    public static final class Report {
+        public int trackPoints;
+        public long durationMs;
+        public int fixesDelivered;
+        public int fixesAccepted;
+        public int predictions;
+        public int onCommands;
+        public int offCommands;
+        public int falseEnters;
+        public int falseExits;
+        public final List<Visit> visits = new ArrayList<>();
+
+        public int missedVisits() {
+            int missed = 0;
+            for (Visit visit : visits) {
+                if (!visit.detected) {
+                    missed++;
+                }
+            }
+            return missed;
+        }
+
+        public long maxDelayMs() {
+            long max = 0;
+            for (Visit visit : visits) {
+                max = Math.max(max, visit.delayMs());
+            }
+            return max;
+        }
+
+        public int bleCommands() {
+            return onCommands + offCommands;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("Track: %d points over %.1f min, %d fixes delivered, %d accepted%n",
+                    trackPoints, durationMs / 60000.0, fixesDelivered, fixesAccepted);
+            for (Visit visit : visits) {
+                String outcome = !visit.detected ? "MISSED"
+                        : visit.delayMs() < 0 ? String.format("alerted %.1fs early", -visit.delayMs() / 1000.0)
+                        : String.format("detected after %.1fs", visit.delayMs() / 1000.0);
+                out.printf("  %-30s entered at +%6.1fs  %s%n", visit.fence.name, visit.startMs / 1000.0, outcome);
+            }
+            out.printf("Visits: %d, missed: %d, max delay: %.1fs%n", visits.size(), missedVisits(),
+                    maxDelayMs() / 1000.0);
+            out.printf("False enters: %d, false exits: %d, predictions: %d%n", falseEnters, falseExits, predictions);
+            out.printf("BLE commands: %d (%d on, %d off)%n", bleCommands(), onCommands, offCommands);
+        }
+    }
+
+    private final List<LocationItem> fences;
+    private final GeofenceSnapshot snapshot;
+    // Exact shapes for the ground truth, polygons included; slot per fence index
+    private final FenceTable truthTable;
+    private final int[] truthSlots;
+    private final GeofenceMonitor monitor = new GeofenceMonitor(this);
+    private final Options options;
+    private final Random random;
+    private final Report report = new Report();
+    // Truth per fence at the point being delivered, for judging enter/exit callbacks
+    private boolean[] truthInside;
+    // Track time of the fix being delivered, and when each fence's arrival was last predicted
+    private long currentMs;
+    private long[] predictedAtMs;
+
+    public TraceReplay(List<LocationItem> fences, Options options) {
+        this.fences = fences;
+        this.snapshot = new GeofenceSnapshot(0, fences);
+        this.truthTable = new FenceTable(fences.size());
+        this.truthSlots = new int[fences.size()];
+        for (int i = 0; i < fences.size(); i++) {
+            truthSlots[i] = truthTable.add(fences.get(i));
+        }
+        this.options = options;
+        this.random = new Random(options.seed);
+        monitor.setDwell(options.enterDwellMs, options.exitDwellMs);
+        monitor.setExitHysteresisMeters(options.exitHysteresisMeters);
+        monitor.setLeadTimeMs(options.leadTimeMs);
+    }
+
+    public Report run(List<TrackReader.TrackPoint> track) {
+        long t0 = track.get(0).timeMs;
+        Visit[] openVisits = new Visit[fences.size()];
+        truthInside = new boolean[fences.size()];
+        predictedAtMs = new long[fences.size()];
+        Arrays.fill(predictedAtMs, -1);
+        boolean delivered = false;
+        long lastDeliveredMs = 0;
+        double lastDeliveredLat = 0;
+        double lastDeliveredLng = 0;
+
+        report.trackPoints = track.size();
+        report.durationMs = track.get(track.size() - 1).timeMs - t0;
+        for (TrackReader.TrackPoint point : track) {
+            long t = point.timeMs - t0;
+
+            // Ground truth: which fences the track itself is in
+            for (int i = 0; i < fences.size(); i++) {
+                LocationItem fence = fences.get(i);
+                boolean inside = truthTable.contains(truthSlots[i], point.lat, point.lng);
+                truthInside[i] = inside;
+                if (inside && openVisits[i] == null) {
+                    openVisits[i] = new Visit(fence, t);
+                    report.visits.add(openVisits[i]);
+                } else if (!inside && openVisits[i] != null) {
+                    openVisits[i].endMs = t;
+                    openVisits[i] = null;
+                }
+            }
+
+            LocationScheduler scheduler = monitor.getScheduler();
+            boolean due = !delivered || !options.honourSchedule
+                    || (t - lastDeliveredMs >= scheduler.getIntervalMs()
+                            && FenceTable.haversineMeters(point.lat, point.lng, lastDeliveredLat,
+                                    lastDeliveredLng) >= scheduler.getMinDistanceMeters());
+            if (due) {
+                delivered = true;
+                lastDeliveredMs = t;
+                lastDeliveredLat = point.lat;
+                lastDeliveredLng = point.lng;
+                deliver(point, t);
+            }
+
+            // Only the fence the LED is on for is detected, not every fence the track happens to be in
+            int active = monitor.isLedOn() ? fenceIndex(monitor.getActiveFenceId()) : -1;
+            if (active >= 0 && openVisits[active] != null && !openVisits[active].detected) {
+                Visit visit = openVisits[active];
+                visit.detected = true;
+                // Credit an alert that was already on for this fence because of a prediction
+                visit.detectedMs = predictedAtMs[active] >= 0 ? Math.min(t, predictedAtMs[active]) : t;
+            }
+        }
+        long end = report.durationMs;
+        for (Visit visit : openVisits) {
+            if (visit != null) {
+                visit.endMs = end;
+            }
+        }
+        return report;
+    }
+
+    private void deliver(TrackReader.TrackPoint point, long t) {
+        double lat = point.lat;
+        double lng = point.lng;
+        float accuracy = Float.isNaN(point.accuracy) ? options.defaultAccuracy : point.accuracy;
+        if (options.noiseMeters > 0) {
+            lat += random.nextGaussian() * options.noiseMeters / FenceTable.METERS_PER_DEGREE;
+            lng += random.nextGaussian() * options.noiseMeters
+                    / (FenceTable.METERS_PER_DEGREE * Math.cos(Math.toRadians(point.lat)));
+            accuracy = Math.max(accuracy, (float) options.noiseMeters);
+        }
+        report.fixesDelivered++;
+        currentMs = t;
+        // Replayed fixes are never stale: they arrive the moment they were taken
+        if (monitor.onFix(snapshot, t, t, lat, lng, accuracy, point.speed)) {
+            report.fixesAccepted++;
+        }
+    }
+
+    @Override
+    public void onEnter(LocationItem fence, double lat, double lng, float accuracy) {
+        if (!truthInside[fenceIndex(fence.id)]) {
+            report.falseEnters++;
+        }
+    }
+
+    @Override
+    public void onPredictedArrival(LocationItem fence, float secondsToEntry, double lat, double lng, float speedMps) {
+        report.predictions++;
+        predictedAtMs[fenceIndex(fence.id)] = currentMs;
+    }
+
+    @Override
+    public void onExit(int fenceId, double lat, double lng, float accuracy) {
+        int i = fenceIndex(fenceId);
+        if (i >= 0) {
+            predictedAtMs[i] = -1;
+        }
+        if (i >= 0 && truthInside[i]) {
+            report.falseExits++;
+        }
+    }
+
+    private int fenceIndex(int id) {
+        for (int i = 0; i < fences.size(); i++) {
+            if (fences.get(i).id == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void onLedChanged(boolean on, int fenceId) {
+        if (on) {
+            report.onCommands++;
+        } else {
+            report.offCommands++;
+        }
+    }
+
+    @Override
+    public void onScheduleChanged() {
+        // The next delivery check reads the scheduler directly
+    }
+
+    public static void main(String[] args) {
+        File trackFile = null;
+        File fenceFile = null;
+        Options options = new Options();
+        long maxDelayMs = -1;
+        int maxFalse = -1;
+        int maxMissed = -1;
+        int maxCommands = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--every-point")) {
+                    options.honourSchedule = false;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    usage("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--track":
+                        trackFile = new File(value);
+                        break;
+                    case "--fences":
+                        fenceFile = new File(value);
+                        break;
+                    case "--noise":
+                        options.noiseMeters = Double.parseDouble(value);
+                        break;
+                    case "--accuracy":
+                        options.defaultAccuracy = Float.parseFloat(value);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--enter-dwell-ms":
+                        options.enterDwellMs = Long.parseLong(value);
+                        break;
+                    case "--exit-dwell-ms":
+                        options.exitDwellMs = Long.parseLong(value);
+                        break;
+                    case "--hysteresis":
+                        options.exitHysteresisMeters = Float.parseFloat(value);
+                        break;
+                    case "--lead-s":
+                        options.leadTimeMs = (long) (Double.parseDouble(value) * 1000);
+                        break;
+                    case "--max-delay-ms":
+                        maxDelayMs = Long.parseLong(value);
+                        break;
+                    case "--max-false":
+                        maxFalse = Integer.parseInt(value);
+                        break;
+                    case "--max-missed":
+                        maxMissed = Integer.parseInt(value);
+                        break;
+                    case "--max-commands":
+                        maxCommands = Integer.parseInt(value);
+                        break;
+                    default:
+                        usage("Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage("Bad number: " + e.getMessage());
+        }
+        if (trackFile == null || fenceFile == null) {
+            usage("--track and --fences are required");
+        }
+
+        Report report;
+        try {
+            List<LocationItem> fences = TrackReader.readFences(fenceFile);
+            report = new TraceReplay(fences, options).run(TrackReader.readTrack(trackFile));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        report.print(System.out);
+
+        boolean failed = false;
+        if (maxDelayMs >= 0 && report.maxDelayMs() > maxDelayMs) {
+            System.out.println("FAIL: max delay " + report.maxDelayMs() + "ms > " + maxDelayMs + "ms");
+            failed = true;
+        }
+        if (maxFalse >= 0 && report.falseEnters + report.falseExits > maxFalse) {
+            System.out.println("FAIL: " + (report.falseEnters + report.falseExits) + " false events > " + maxFalse);
+            failed = true;
+        }
+        if (maxMissed >= 0 && report.missedVisits() > maxMissed) {
+            System.out.println("FAIL: " + report.missedVisits() + " missed visits > " + maxMissed);
+            failed = true;
+        }
+        if (maxCommands >= 0 && report.bleCommands() > maxCommands) {
+            System.out.println("FAIL: " + report.bleCommands() + " BLE commands > " + maxCommands);
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: TraceReplay --track <file.gpx|file.csv> --fences <locations.csv>"
+                + " [--noise m] [--accuracy m] [--seed n] [--every-point]"
+                + " [--enter-dwell-ms n] [--exit-dwell-ms n] [--hysteresis m] [--lead-s n]"
+                + " [--max-delay-ms n] [--max-false n] [--max-missed n] [--max-commands n]");
+        System.exit(2);
+    }
+}
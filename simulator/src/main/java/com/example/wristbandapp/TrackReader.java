@@ -0,0 +1,223 @@
+package com.example.wristbandapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// Loads replay inputs: tracks from GPX (trkpt/rtept/wpt) or CSV, and fences from the app's CSV export
+// plus an optional polygon column.
+// CSV tracks need time, lat and lng columns and may have accuracy and speed; an exported event log
+// (EventJournal.exportCsv) also works, using its fix rows.
+public final class TrackReader {
+    public static final class TrackPoint {
+        public final long timeMs;
+        public final double lat;
+        public final double lng;
+        // NaN when the source doesn't say
+        public final float accuracy;
+        public final float speed;
+
+        TrackPoint(long timeMs, double lat, double lng, float accuracy, float speed) {
+            this.timeMs = timeMs;
+            this.lat = lat;
+            this.lng = lng;
+            this.accuracy = accuracy;
+            this.speed = speed;
+        }
+    }
+
+    // Rough conversion used when a GPX point only has HDOP
+    private static final float METERS_PER_HDOP = 5f;
+
+    private TrackReader() {
+    }
+
+    public static List<TrackPoint> readTrack(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        try (InputStream in = new FileInputStream(file)) {
+            List<TrackPoint> points = name.endsWith(".gpx") ? readGpx(in) : readCsvTrack(in);
+            if (points.isEmpty()) {
+                throw new IOException(file + " has no track points");
+            }
+            points.sort((a, b) -> Long.compare(a.timeMs, b.timeMs));
+            return points;
+        }
+    }
+
+    // Same columns GeofenceExporter writes: name,latitude,longitude,radius_meters. Ids are the row numbers.
+    // The export only has a polygon's covering circle, so a fifth column may give its outline as
+    // "lat lng;lat lng;..." (at least three vertices); the circle columns are then ignored.
+    public static List<LocationItem> readFences(File file) throws IOException {
+        List<LocationItem> fences = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = splitCsv(line);
+                if (fields.size() < 4 || fields.get(1).equalsIgnoreCase("latitude")) {
+                    continue;
+                }
+                try {
+                    int id = fences.size() + 1;
+                    if (fields.size() > 4 && !fields.get(4).isEmpty()) {
+                        fences.add(LocationItem.fromPolygon(id, fields.get(0), parseVertices(fields.get(4))));
+                    } else {
+                        fences.add(new LocationItem(id, fields.get(0),
+                                Double.parseDouble(fields.get(1)), Double.parseDouble(fields.get(2)),
+                                Float.parseFloat(fields.get(3))));
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad fence row in " + file + ": " + line);
+                }
+            }
+        }
+        return fences;
+    }
+
+    private static double[] parseVertices(String text) {
+        String[] points = text.split(";");
+        if (points.length < 3) {
+            throw new NumberFormatException("polygon needs at least 3 vertices");
+        }
+        double[] vertices = new double[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            String[] parts = points[i].trim().split("\\s+");
+            if (parts.length != 2) {
+                throw new NumberFormatException("bad vertex " + points[i]);
+            }
+            vertices[2 * i] = Double.parseDouble(parts[0]);
+            vertices[2 * i + 1] = Double.parseDouble(parts[1]);
+        }
+        return vertices;
+    }
+
+    private static List<TrackPoint> readGpx(InputStream in) throws IOException {
+        List<TrackPoint> points = new ArrayList<>();
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            double lat = 0;
+            double lng = 0;
+            long time = -1;
+            float accuracy = Float.NaN;
+            float speed = Float.NaN;
+            boolean inPoint = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    String tag = xml.getLocalName();
+                    if (tag.equals("trkpt") || tag.equals("rtept") || tag.equals("wpt")) {
+                        inPoint = true;
+                        lat = Double.parseDouble(xml.getAttributeValue(null, "lat"));
+                        lng = Double.parseDouble(xml.getAttributeValue(null, "lon"));
+                        time = -1;
+                        accuracy = Float.NaN;
+                        speed = Float.NaN;
+                    } else if (inPoint && tag.equals("time")) {
+                        time = Instant.parse(xml.getElementText().trim()).toEpochMilli();
+                    } else if (inPoint && tag.equals("hdop")) {
+                        accuracy = Float.parseFloat(xml.getElementText().trim()) * METERS_PER_HDOP;
+                    } else if (inPoint && tag.equals("speed")) {
+                        speed = Float.parseFloat(xml.getElementText().trim());
+                    }
+                } else if (event == XMLStreamReader.END_ELEMENT && inPoint) {
+                    String tag = xml.getLocalName();
+                    if (tag.equals("trkpt") || tag.equals("rtept") || tag.equals("wpt")) {
+                        inPoint = false;
+                        if (time >= 0) {
+                            points.add(new TrackPoint(time, lat, lng, accuracy, speed));
+                        }
+                    }
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("Bad GPX: " + e.getMessage(), e);
+        }
+        return points;
+    }
+
+    private static List<TrackPoint> readCsvTrack(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return new ArrayList<>();
+        }
+        List<String> columns = splitCsv(header.toLowerCase(Locale.ROOT));
+        int timeCol = indexOf(columns, "time_ms", "time", "timestamp");
+        int latCol = indexOf(columns, "lat", "latitude");
+        int lngCol = indexOf(columns, "lng", "lon", "longitude");
+        int accuracyCol = indexOf(columns, "accuracy", "value");
+        int speedCol = indexOf(columns, "speed");
+        int eventCol = indexOf(columns, "event");
+        if (timeCol < 0 || latCol < 0 || lngCol < 0) {
+            throw new IOException("CSV track needs time, lat and lng columns, got: " + header);
+        }
+
+        List<TrackPoint> points = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<String> fields = splitCsv(line);
+            if (fields.size() < columns.size() || (eventCol >= 0 && !fields.get(eventCol).equals("fix"))) {
+                continue;
+            }
+            String time = fields.get(timeCol);
+            points.add(new TrackPoint(
+                    time.indexOf('T') > 0 ? Instant.parse(time).toEpochMilli() : Long.parseLong(time),
+                    Double.parseDouble(fields.get(latCol)), Double.parseDouble(fields.get(lngCol)),
+                    accuracyCol >= 0 ? Float.parseFloat(fields.get(accuracyCol)) : Float.NaN,
+                    speedCol >= 0 && !fields.get(speedCol).isEmpty() ? Float.parseFloat(fields.get(speedCol))
+                            : Float.NaN));
+        }
+        return points;
+    }
+
+    private static int indexOf(List<String> columns, String... names) {
+        for (String name : names) {
+            int index = columns.indexOf(name);
+            if (index >= 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    // Splits one CSV line, honouring double-quoted fields with "" escapes
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
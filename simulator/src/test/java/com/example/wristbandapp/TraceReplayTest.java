@@ -0,0 +1,85 @@
+package com.example.wristbandapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.junit.Test;
+
+// walk.csv: 20 minutes east at 1.4 m/s through a circle (Cafe), a square polygon (Park) and a circle
+// overlapping the polygon's far edge (Gate), passing 300 m south of a fourth circle (Museum).
+public class TraceReplayTest {
+    private static TraceReplay.Report replay(TraceReplay.Options options) throws Exception {
+        List<LocationItem> fences = TrackReader.readFences(resource("walk_fences.csv"));
+        return new TraceReplay(fences, options).run(TrackReader.readTrack(resource("walk.csv")));
+    }
+
+    private static File resource(String name) throws URISyntaxException {
+        return new File(TraceReplayTest.class.getResource("/" + name).toURI());
+    }
+
+    private static TraceReplay.Visit visit(TraceReplay.Report report, String name) {
+        for (TraceReplay.Visit visit : report.visits) {
+            if (visit.fence.name.equals(name)) {
+                return visit;
+            }
+        }
+        throw new AssertionError("No visit to " + name);
+    }
+
+    @Test
+    public void cleanTrackDetectsEveryVisit() throws Exception {
+        TraceReplay.Report report = replay(new TraceReplay.Options());
+
+        assertEquals(3, report.visits.size());
+        assertEquals(0, report.missedVisits());
+        assertEquals(0, report.falseEnters);
+        assertEquals(0, report.falseExits);
+        assertTrue(visit(report, "Cafe").delayMs() <= 10000);
+        assertTrue(visit(report, "Park").delayMs() <= 10000);
+        // One alert per arrival: Gate takes over the LED from Park without switching it off
+        assertEquals(2, report.onCommands);
+        assertEquals(2, report.offCommands);
+    }
+
+    @Test
+    public void polygonGroundTruthUsesTheOutline() throws Exception {
+        TraceReplay.Report report = replay(new TraceReplay.Options());
+
+        // The square starts 700 m along; its covering circle would start about 42 s earlier
+        assertEquals(500000, visit(report, "Park").startMs);
+    }
+
+    @Test
+    public void overlappingFenceIsOnlyCreditedOnceItOwnsTheLed() throws Exception {
+        TraceReplay.Report report = replay(new TraceReplay.Options());
+
+        TraceReplay.Visit park = visit(report, "Park");
+        TraceReplay.Visit gate = visit(report, "Gate");
+        // Gate is entered while Park still holds the LED, and becomes active only after Park's exit dwell
+        assertTrue(gate.startMs < park.endMs);
+        assertTrue(gate.detected);
+        assertTrue(gate.detectedMs >= park.endMs);
+    }
+
+    @Test
+    public void noisyTrackStaysWithinLimits() throws Exception {
+        TraceReplay.Options options = new TraceReplay.Options();
+        options.noiseMeters = 10;
+        options.seed = 3;
+        TraceReplay.Report report = replay(options);
+
+        assertEquals(0, report.missedVisits());
+        assertTrue(report.maxDelayMs() <= 90000);
+        assertTrue(report.falseEnters + report.falseExits <= 1);
+        // Dwell and hysteresis keep the noise from flickering the LED
+        assertEquals(4, report.bleCommands());
+        for (TraceReplay.Visit visit : report.visits) {
+            assertFalse(visit.fence.name.equals("Museum"));
+        }
+    }
+}